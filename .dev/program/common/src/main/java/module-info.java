@@ -37,6 +37,7 @@ module program.common {
     exports program.common.basic.resource.conf;
 
     exports program.common.smart.device;
+    exports program.common.smart.device.model;
 
     exports program.common.smart.ocr;
     exports program.common.smart.ocr.model;
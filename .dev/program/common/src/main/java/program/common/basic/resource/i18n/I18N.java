@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * I18N.
@@ -56,6 +57,11 @@ public final class I18N {
         return properties.getProperty(key, defaults);
     }
 
+    // @return keys of the l10n texts of the current language
+    public Set<String> keys() {
+        return properties.stringPropertyNames();
+    }
+
     // *****************************************************************************************
     // Methods, initializing i18n text
     // *****************************************************************************************
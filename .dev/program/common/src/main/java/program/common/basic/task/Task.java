@@ -23,6 +23,8 @@ import program.common.basic.task._impl.BasicTask;
 import program.common.basic.task._impl.RetryTask;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Task.
@@ -55,6 +57,21 @@ public abstract class Task<T> implements Callable<T> {
         }
     }
 
+    // *****************************************************************************************
+    // StaticMethods, delaying completion
+    // *****************************************************************************************
+
+    // Note: Unlike `sleep(int)`, no thread is parked: the future is completed by the shared timer
+    // of `CompletableFuture` (a single daemon thread), and callers may wait for it only when
+    // needed, such as by `join()`.
+    //
+    // @return a future completed after the duration
+    public static CompletableFuture<Void> delay(int duration) {
+        if (duration < 1) {return CompletableFuture.completedFuture(null);}
+        return new CompletableFuture<Void>()
+                .completeOnTimeout(null, duration, TimeUnit.MILLISECONDS);
+    }
+
     // *****************************************************************************************
     // *****************************************************************************************
 
@@ -19,7 +19,9 @@ package program.common.basic.vision;
 import com.alibaba.fastjson2.JSONObject;
 import lombok.Getter;
 import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
 
+import java.util.List;
 import java.util.Random;
 
 import static java.lang.String.format;
@@ -48,6 +50,27 @@ public final class Area {
         return new Area(id, arr[0], arr[1], arr[2], arr[3]);
     }
 
+    // *****************************************************************************************
+    // StaticMethods, combining areas
+    // *****************************************************************************************
+
+    // @return the smallest area containing all the given areas
+    public static Area union(String name, List<Area> areas) {
+        int x1 = Integer.MAX_VALUE, y1 = Integer.MAX_VALUE;
+        int x2 = Integer.MIN_VALUE, y2 = Integer.MIN_VALUE;
+        for (Area area : areas) {
+            x1 = Math.min(x1, area.x);
+            y1 = Math.min(y1, area.y);
+            x2 = Math.max(x2, area.x + area.width);
+            y2 = Math.max(y2, area.y + area.height);
+        }
+        if (x1 == Integer.MAX_VALUE) {
+            String message = "No area to union";
+            throw new InvocationException(message);
+        }
+        return new Area(name, x1, y1, x2 - x1, y2 - y1);
+    }
+
     // *****************************************************************************************
     // *****************************************************************************************
 
@@ -24,10 +24,19 @@ import program.common.basic.exception.InvocationException;
 import program.common.basic.resource.ResUtl;
 
 import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
 import java.util.function.IntUnaryOperator;
 
 /**
@@ -46,9 +55,23 @@ public final class Image {
 
     // Note: This method CLOSE the given stream after the read operation has completed.
     public static Image read(String name, InputStream stream) {
+        return read(name, stream, null);
+    }
+
+    // Note: This method CLOSE the given stream after the read operation has completed.
+    //
+    // Note: 8-bit RGB/RGBA non-interlaced png (the output of `screencap -p`) is decoded by the
+    // dedicated decoder, which decodes the rows down to the crop only; Others fall back to
+    // ImageIO.
+    //
+    // @param [crop] the area to decode, or null to decode the whole image
+    public static Image read(String name, InputStream stream, Area crop) {
         BufferedImage image;
         try (stream) {
-            image = ImageIO.read(stream);
+            byte[] head = stream.readNBytes(PNGDecoder.HEAD_SIZE);
+            Image result = PNGDecoder.decode(name, head, stream, crop);
+            if (result != null) {return result;}
+            image = ImageIO.read(new SequenceInputStream(new ByteArrayInputStream(head), stream));
         } catch (IOException e) {
             throw new InvocationException(e);
         }
@@ -56,6 +79,9 @@ public final class Image {
             String message = "No registered ImageReader claims to be able to read stream";
             throw new InvocationException(message);
         }
+        if (crop != null) {
+            image = image.getSubimage(crop.x(), crop.y(), crop.width(), crop.height());
+        }
         return new Image(name, image);
     }
 
@@ -68,6 +94,19 @@ public final class Image {
         }
     }
 
+    // Note: The given array is used as the raster of the image directly (without copying).
+    //
+    // @param [rgbs] rgb values, row by row
+    public static Image of(String name, int width, int height, int[] rgbs) {
+        int[] masks = {0xFF0000, 0xFF00, 0xFF};
+        DataBufferInt buffer = new DataBufferInt(rgbs, width * height);
+        WritableRaster raster = Raster.createPackedRaster(
+                buffer, width, height, width, masks, null
+        );
+        ColorModel model = new DirectColorModel(24, masks[0], masks[1], masks[2]);
+        return new Image(name, new BufferedImage(model, raster, false, null));
+    }
+
     // *****************************************************************************************
     // *****************************************************************************************
 
@@ -90,6 +129,51 @@ public final class Image {
         return delegate.getRGB(x, y) & 0xFFFFFF;
     }
 
+    // @return rgb values of the given area, row by row
+    public int[] rgbs(Area area) {
+        return rgbs(area.x(), area.y(), area.width(), area.height(), null);
+    }
+
+    // @param [buffer] the array to store the result, or null to allocate a new one
+    // @return rgb values of the given area, row by row
+    public int[] rgbs(int x, int y, int width, int height, int[] buffer) {
+        int[] result = delegate.getRGB(x, y, width, height, buffer, 0, width);
+        for (int i = 0, l = width * height; i < l; i++) {
+            result[i] &= 0xFFFFFF;
+        }
+        return result;
+    }
+
+    // *****************************************************************************************
+    // Methods, hashing image
+    // *****************************************************************************************
+
+    public long hash() {
+        return hash(0, 0, width(), height());
+    }
+
+    public long hash(Area area) {
+        return hash(area.x(), area.y(), area.width(), area.height());
+    }
+
+    // Note: The hash covers the rgb values only (alpha is ignored).
+    //
+    // @return 64-bit hash of the rgb values in the given area
+    public long hash(int x, int y, int width, int height) {
+        int[] row = new int[width];
+        long hash = 0xCBF29CE484222325L ^ (((long) width << 32) | height);
+        for (int j = 0; j < height; j++) {
+            rgbs(x, y + j, width, 1, row);
+            for (int i = 0; i < width; i++) {
+                hash = (hash ^ row[i]) * 0x100000001B3L;
+            }
+        }
+        // finalizer of splitmix64, spreading the low entropy of fnv over all bits
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
     // *****************************************************************************************
     // Methods, comparing image
     // *****************************************************************************************
@@ -106,6 +190,26 @@ public final class Image {
         return true;
     }
 
+    // Note: Unlike `match(Area, Image)`, this method allows small differences, such as the ones
+    // between a template scaled by `Resolution` and the screen rendered at that resolution.
+    //
+    // @param [tolerance] max mean difference of each color channel, 0 to match exactly
+    public boolean match(Area area, Image that, int tolerance) {
+        if (tolerance == 0) {return match(area, that);}
+        int w = that.width(), h = that.height();
+        long limit = (long) tolerance * w * h * 3, diff = 0;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int a = rgb(area.x() + x, area.y() + y), b = that.rgb(x, y);
+                diff += Math.abs((a >> 16) - (b >> 16))
+                        + Math.abs(((a >> 8) & 0xFF) - ((b >> 8) & 0xFF))
+                        + Math.abs((a & 0xFF) - (b & 0xFF));
+            }
+            if (diff > limit) {return false;}
+        }
+        return true;
+    }
+
     public Area find(Image that) {
         return find(new Area(0, 0, width(), height()), that);
     }
@@ -136,6 +240,30 @@ public final class Image {
     // Methods, manipulating image
     // *****************************************************************************************
 
+    // Note: The result shares the pixels with this image.
+    public Image crop(Area area) {
+        BufferedImage result = delegate.getSubimage(
+                area.x(), area.y(), area.width(), area.height()
+        );
+        return new Image(area.name(), result);
+    }
+
+    // Note: Area averaging is used, which is slow but close to how a smaller screen is rendered;
+    // The result is supposed to be cached by the caller.
+    public Image resize(int width, int height) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        java.awt.Image scaled = delegate.getScaledInstance(
+                width, height, java.awt.Image.SCALE_AREA_AVERAGING
+        );
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.drawImage(scaled, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return new Image(name, result);
+    }
+
     public Image mutate(ImageOps ops) {
         int x, y, w, h;
         String name;
@@ -153,21 +281,36 @@ public final class Image {
             h = area.height();
         }
         BufferedImage result;
-        IntUnaryOperator converter = ops.converter;
         if (ops.threshold() == 0) {
             result = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
         } else {
             result = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY);
         }
-        for (int j = 0; j < h; j++) {
-            for (int i = 0; i < w; i++) {
-                int rgb = rgb(x + i, y + j) & 0xFFFFFF;
-                result.setRGB(i, j, converter.applyAsInt(rgb));
-            }
-        }
+        convert(result, x, y, w, h, 0, 0, ops.converter);
         return new Image(name, result);
     }
 
+    // Note: The result covers the given bounds, each crop of the given ops is converted into it
+    // by the ops (the later one wins where crops overlap), and pixels outside the crops are
+    // left black.
+    //
+    // @param [bounds] area containing all the crops, see `Area.union(String, List)`
+    public Image mutate(Area bounds, List<ImageOps> opsList) {
+        int bx = bounds.x(), by = bounds.y(), bw = bounds.width(), bh = bounds.height();
+        BufferedImage result;
+        if (opsList.stream().allMatch(ops -> ops.threshold() != 0)) {
+            result = new BufferedImage(bw, bh, BufferedImage.TYPE_BYTE_BINARY);
+        } else {
+            result = new BufferedImage(bw, bh, BufferedImage.TYPE_3BYTE_BGR);
+        }
+        for (ImageOps ops : opsList) {
+            Area crop = (ops.crop() == null) ? new Area(0, 0, width(), height()) : ops.crop();
+            int x = crop.x(), y = crop.y(), w = crop.width(), h = crop.height();
+            convert(result, x, y, w, h, x - bx, y - by, ops.converter);
+        }
+        return new Image(bounds.name(), result);
+    }
+
     // *****************************************************************************************
     // Methods, saving image
     // *****************************************************************************************
@@ -193,4 +336,20 @@ public final class Image {
         }
     }
 
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // Note: Pixels in the area (x,y,w,h) of this image are converted into the result at (dx,dy).
+    private void convert(
+            BufferedImage result, int x, int y, int w, int h, int dx, int dy,
+            IntUnaryOperator converter) {
+        for (int j = 0; j < h; j++) {
+            for (int i = 0; i < w; i++) {
+                int rgb = rgb(x + i, y + j) & 0xFFFFFF;
+                result.setRGB(dx + i, dy + j, converter.applyAsInt(rgb));
+            }
+        }
+    }
+
 }
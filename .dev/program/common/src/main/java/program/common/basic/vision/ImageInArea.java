@@ -48,6 +48,10 @@ public final class ImageInArea {
         return new ImageInArea(new File(path));
     }
 
+    public static ImageInArea of(Area area, Image image) {
+        return new ImageInArea(area, image);
+    }
+
     public static DataMap<ImageInArea> loadAll(String directory) {
         File dir = new File(directory);
         File[] files = dir.listFiles();
@@ -0,0 +1,268 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.basic.vision;
+
+import program.common.basic.exception.InvocationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * PNG decoder, specialised for the output of `screencap -p` (8-bit RGB/RGBA, non-interlaced).
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+final class PNGDecoder {
+
+    private static final byte[] SIGNATURE = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+    private static final int IHDR = 0x49484452;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454E44;
+
+    // signature(8) + length(4) + type(4) + IHDR(13) + crc(4)
+    static final int HEAD_SIZE = 33;
+
+    // *****************************************************************************************
+    // StaticMethods, decoding image
+    // *****************************************************************************************
+
+    // Note: The head is the first `HEAD_SIZE` bytes of the png, the given stream provides the rest.
+    // Decoding stops after the last row of the crop, so the rest of the stream is not consumed.
+    //
+    // @param [crop] the area to decode, or null to decode the whole image
+    // @return the decoded image, or null if the head is not of a png supported by this decoder
+    static Image decode(String name, byte[] head, InputStream stream, Area crop) {
+        if (head.length < HEAD_SIZE) {return null;}
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (head[i] != SIGNATURE[i]) {return null;}
+        }
+        if (readIntBE(head, 12) != IHDR) {return null;}
+        int width = readIntBE(head, 16);
+        int height = readIntBE(head, 20);
+        int bitDepth = head[24], colorType = head[25], interlace = head[28];
+        if ((bitDepth != 8) || (interlace != 0)) {return null;}
+        int bpp;
+        if (colorType == 2) {
+            bpp = 3;
+        } else if (colorType == 6) {
+            bpp = 4;
+        } else {
+            return null;
+        }
+        int x, y, w, h;
+        if (crop == null) {
+            x = y = 0;
+            w = width;
+            h = height;
+        } else {
+            x = crop.x();
+            y = crop.y();
+            w = crop.width();
+            h = crop.height();
+            if ((x < 0) || (y < 0) || (x + w > width) || (y + h > height)) {
+                String message = "Crop out of image";
+                throw new InvocationException(message)
+                        .with("crop", crop)
+                        .with("image_size", width + "x" + height);
+            }
+        }
+        Inflater inflater = new Inflater();
+        try {
+            int[] rgbs = new int[w * h];
+            new Decoder(stream, inflater, width, bpp).decode(rgbs, x, y, w, h);
+            return Image.of(name, w, h, rgbs);
+        } catch (IOException | DataFormatException e) {
+            throw new InvocationException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static int readIntBE(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    // *****************************************************************************************
+    // InternalStaticClasses
+    // *****************************************************************************************
+
+    private static final class Decoder {
+
+        private final InputStream stream;
+        private final Inflater inflater;
+        private final int width;
+        private final int bpp;
+
+        private final byte[] input = new byte[16 * 1024];
+        private final byte[] intBuffer = new byte[8];
+        // bytes left in the current IDAT chunk
+        private int remaining = 0;
+
+        // *********************************************************************************
+        // Methods, decoding image
+        // *********************************************************************************
+
+        // Note: CRCs are not verified, the transport (adb/file) is trusted.
+        void decode(int[] rgbs, int x, int y, int w, int h)
+                throws IOException, DataFormatException {
+            nextIDAT();
+            int rowSize = width * bpp;
+            // only the bytes up to the right edge of the crop need unfiltering, because every
+            // filter refers to bytes on the left or above only
+            int limit = (x + w) * bpp;
+            byte[] prev = new byte[rowSize + 1];
+            byte[] curr = new byte[rowSize + 1];
+            for (int j = 0, bottom = y + h; j < bottom; j++) {
+                inflateFully(curr, rowSize + 1);
+                unfilter(curr, prev, limit);
+                if (j >= y) {
+                    int p = 1 + x * bpp, q = (j - y) * w;
+                    for (int i = 0; i < w; i++, p += bpp, q++) {
+                        rgbs[q] = ((curr[p] & 0xFF) << 16) | ((curr[p + 1] & 0xFF) << 8)
+                                | (curr[p + 2] & 0xFF);
+                    }
+                }
+                byte[] temp = prev;
+                prev = curr;
+                curr = temp;
+            }
+        }
+
+        // *********************************************************************************
+        // InternalMethods
+        // *********************************************************************************
+
+        // Note: Index 0 of the row is the filter type.
+        private void unfilter(byte[] curr, byte[] prev, int limit) {
+            int bpp = this.bpp;
+            switch (curr[0]) {
+                case 0 -> {}
+                case 1 -> {
+                    for (int i = 1 + bpp; i <= limit; i++) {
+                        curr[i] += curr[i - bpp];
+                    }
+                }
+                case 2 -> {
+                    for (int i = 1; i <= limit; i++) {
+                        curr[i] += prev[i];
+                    }
+                }
+                case 3 -> {
+                    for (int i = 1; i <= bpp; i++) {
+                        curr[i] += (prev[i] & 0xFF) >>> 1;
+                    }
+                    for (int i = 1 + bpp; i <= limit; i++) {
+                        curr[i] += ((curr[i - bpp] & 0xFF) + (prev[i] & 0xFF)) >>> 1;
+                    }
+                }
+                case 4 -> {
+                    for (int i = 1; i <= bpp; i++) {
+                        curr[i] += prev[i];
+                    }
+                    for (int i = 1 + bpp; i <= limit; i++) {
+                        int a = curr[i - bpp] & 0xFF, b = prev[i] & 0xFF, c = prev[i - bpp] & 0xFF;
+                        int pa = Math.abs(b - c), pb = Math.abs(a - c);
+                        int pc = Math.abs(a + b - c - c);
+                        curr[i] += ((pa <= pb) && (pa <= pc)) ? a : ((pb <= pc) ? b : c);
+                    }
+                }
+                default -> {
+                    String message = "Unknown png filter type";
+                    throw new InvocationException(message)
+                            .with("filter_type", curr[0]);
+                }
+            }
+        }
+
+        private void inflateFully(byte[] buffer, int length)
+                throws IOException, DataFormatException {
+            for (int offset = 0; offset < length; ) {
+                int n = inflater.inflate(buffer, offset, length - offset);
+                offset += n;
+                if (n > 0) {continue;}
+                if (inflater.finished() || inflater.needsDictionary()) {
+                    String message = "Unexpected end of png image data";
+                    throw new InvocationException(message);
+                }
+                if (inflater.needsInput()) {
+                    feed();
+                }
+            }
+        }
+
+        private void feed() throws IOException {
+            if (remaining == 0) {
+                // crc of the previous IDAT chunk
+                stream.skipNBytes(4);
+                nextIDAT();
+            }
+            int n = stream.read(input, 0, Math.min(input.length, remaining));
+            if (n < 0) {
+                String message = "Unexpected end of png stream";
+                throw new InvocationException(message);
+            }
+            remaining -= n;
+            inflater.setInput(input, 0, n);
+        }
+
+        private void nextIDAT() throws IOException {
+            while (true) {
+                if (stream.readNBytes(intBuffer, 0, 8) < 8) {
+                    String message = "Unexpected end of png stream";
+                    throw new InvocationException(message);
+                }
+                int length = readIntBE(intBuffer, 0);
+                int type = readIntBE(intBuffer, 4);
+                if (type == IDAT) {
+                    if (length > 0) {
+                        remaining = length;
+                        return;
+                    }
+                    stream.skipNBytes(4);
+                } else if (type == IEND) {
+                    String message = "Unexpected end of png image data";
+                    throw new InvocationException(message);
+                } else {
+                    stream.skipNBytes(length + 4L);
+                }
+            }
+        }
+
+        // *********************************************************************************
+        // Constructors
+        // *********************************************************************************
+
+        Decoder(InputStream stream, Inflater inflater, int width, int bpp) {
+            this.stream = stream;
+            this.inflater = inflater;
+            this.width = width;
+            this.bpp = bpp;
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.basic.vision;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Region change detector, reporting which areas changed since the previous frame.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class RegionChangeDetector {
+
+    private final Area[] areas;
+    // hash of each area in the previous frame, absent if the area has not been seen yet
+    private final Map<Area, Long> hashes;
+
+    // *****************************************************************************************
+    // Methods, detecting change
+    // *****************************************************************************************
+
+    // Note: The hashes are updated by the given frame, so each change is reported only once.
+    //
+    // @return areas changed since the previous frame (all areas for the first frame)
+    public synchronized Set<Area> detect(Image frame) {
+        Set<Area> result = new LinkedHashSet<>();
+        for (Area area : areas) {
+            if (update(frame, area)) {
+                result.add(area);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    // Note: The hash of the given area is updated by the given frame.
+    //
+    // @param [area] one of the areas given to the constructor
+    // @return whether the given area changed since the previous frame
+    public synchronized boolean detect(Image frame, Area area) {
+        if (!hashes.containsKey(area) && !contains(area)) {
+            throw new IllegalArgumentException("Area not watched: " + area.name());
+        }
+        return update(frame, area);
+    }
+
+    // *****************************************************************************************
+    // Methods, resetting state
+    // *****************************************************************************************
+
+    // Note: The given area will be reported as changed on the next detection.
+    public synchronized void forget(Area area) {
+        hashes.remove(area);
+    }
+
+    public synchronized void reset() {
+        hashes.clear();
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    public RegionChangeDetector(Collection<Area> areas) {
+        this.areas = areas.toArray(new Area[0]);
+        this.hashes = new IdentityHashMap<>(this.areas.length);
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    private boolean contains(Area area) {
+        for (Area element : areas) {
+            if (element == area) {return true;}
+        }
+        return false;
+    }
+
+    private boolean update(Image frame, Area area) {
+        Long curr = frame.hash(area);
+        Long prev = hashes.put(area, curr);
+        return !curr.equals(prev);
+    }
+
+}
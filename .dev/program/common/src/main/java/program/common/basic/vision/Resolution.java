@@ -0,0 +1,198 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.basic.vision;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Screen resolution, scaling the areas and templates authored at {@link #BASE}.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class Resolution {
+
+    private static final int BASE_WIDTH = 1280;
+    private static final int BASE_HEIGHT = 720;
+    private static final Map<Long, Resolution> CACHE = new ConcurrentHashMap<>();
+
+    // the resolution at which all areas and templates are authored
+    public static final Resolution BASE = of(BASE_WIDTH, BASE_HEIGHT);
+
+    // Note: Scaled templates can not be matched exactly, this is the max mean difference of each
+    // color channel allowed.
+    private static final int MATCH_TOLERANCE = 24;
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    public static Resolution of(int width, int height) {
+        if ((width <= 0) || (height <= 0)) {
+            String message = "Illegal resolution";
+            throw new InvocationException(message)
+                    .with("resolution", width + "x" + height);
+        }
+        long key = ((long) width << 32) | height;
+        return CACHE.computeIfAbsent(key, k -> new Resolution(width, height));
+    }
+
+    // @param [text] <width>x<height>, such as 1280x720
+    public static Resolution parse(String text) {
+        String[] widthAndHeight = text.trim().split("x", 2);
+        try {
+            return of(Integer.parseInt(widthAndHeight[0]), Integer.parseInt(widthAndHeight[1]));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            String message = "Illegal resolution";
+            throw new InvocationException(message)
+                    .with("resolution", text);
+        }
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    private final @Getter int width;
+    private final @Getter int height;
+
+    private final double xScaling;
+    private final double yScaling;
+
+    // Note: Scaled instances of the authored ones, whose keys are compared by identity (none of
+    // them overrides `equals`) and weakly referenced, since resolutions are never released but
+    // the authored data may be (such as reloaded data maps, or areas built per call); The scaled
+    // instances do not reference the authored ones, which would keep the keys reachable.
+    private final Map<Area, Area> areaCache = weakCache();
+    private final Map<ImageInArea, ImageInArea> imageInAreaCache = weakCache();
+    private final Map<ImageOps, ImageOps> imageOpsCache = weakCache();
+    private final Map<TemplateSet, TemplateSet> templateSetCache = weakCache();
+
+    // *****************************************************************************************
+    // Methods, getting metadata
+    // *****************************************************************************************
+
+    public boolean isBase() {
+        return this == BASE;
+    }
+
+    // @return max mean difference of each color channel allowed when matching scaled templates
+    public int matchTolerance() {
+        return isBase() ? 0 : MATCH_TOLERANCE;
+    }
+
+    // *****************************************************************************************
+    // Methods, scaling coordinate
+    // *****************************************************************************************
+
+    // @param [x] x coordinate at the base resolution
+    public int x(int x) {
+        return isBase() ? x : (int) Math.round(x * xScaling);
+    }
+
+    // @param [y] y coordinate at the base resolution
+    public int y(int y) {
+        return isBase() ? y : (int) Math.round(y * yScaling);
+    }
+
+    // *****************************************************************************************
+    // Methods, scaling authored data
+    // *****************************************************************************************
+
+    // Note: The scaled instances are cached, so the same instance is returned for the same
+    // authored one.
+
+    public Area scale(Area area) {
+        if (isBase()) {return area;}
+        return areaCache.computeIfAbsent(area, this::scaleWithoutCache);
+    }
+
+    public ImageInArea scale(ImageInArea imageInArea) {
+        if (isBase()) {return imageInArea;}
+        return imageInAreaCache.computeIfAbsent(imageInArea, ignored -> {
+            Area area = imageInArea.area();
+            Image image = imageInArea.image();
+            Area scaledArea = scaleWithoutCache(new Area(
+                    area.name(), area.x(), area.y(), image.width(), image.height()
+            ));
+            Image scaledImage = image.resize(scaledArea.width(), scaledArea.height());
+            return ImageInArea.of(scaledArea, scaledImage);
+        });
+    }
+
+    public ImageOps scale(ImageOps ops) {
+        if (isBase() || (ops.crop() == null)) {return ops;}
+        return imageOpsCache.computeIfAbsent(ops, ignored -> ImageOps.builder()
+                .crop(scale(ops.crop()))
+                .threshold(ops.threshold())
+                .inverse(ops.inverse())
+                .build());
+    }
+
+    public TemplateSet scale(TemplateSet templates) {
+        if (isBase()) {return templates;}
+        return templateSetCache.computeIfAbsent(templates, ignored -> templates.scale(this));
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, Object
+    // *****************************************************************************************
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // Note: Both edges are scaled (instead of the size), so that adjacent areas stay adjacent.
+    private Area scaleWithoutCache(Area area) {
+        int x = x(area.x()), y = y(area.y());
+        int width = Math.max(1, x(area.x() + area.width()) - x);
+        int height = Math.max(1, y(area.y() + area.height()) - y);
+        return new Area(area.name(), x, y, width, height);
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static <K, V> Map<K, V> weakCache() {
+        return Collections.synchronizedMap(new WeakHashMap<>());
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    private Resolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.xScaling = (double) width / BASE_WIDTH;
+        this.yScaling = (double) height / BASE_HEIGHT;
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.basic.vision;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+import program.common.basic.resource.data.Data;
+import program.common.basic.resource.data.DataMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Template set, matching all templates against the same frame in one pass.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TemplateSet {
+
+    // Note: Below this number of templates, forking costs more than matching sequentially.
+    private static final int PARALLELISM_THRESHOLD = 8;
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    public static TemplateSet of(DataMap<ImageInArea> map) {
+        List<Data<ImageInArea>> dataList = map.stream().toList();
+        int size = dataList.size();
+        String[] ids = new String[size];
+        ImageInArea[] templates = new ImageInArea[size];
+        int[][] pixels = new int[size][];
+        for (int i = 0; i < size; i++) {
+            Data<ImageInArea> data = dataList.get(i);
+            Image image = data.payload().image();
+            ids[i] = data.id();
+            templates[i] = data.payload();
+            pixels[i] = image.rgbs(0, 0, image.width(), image.height(), null);
+        }
+        return new TemplateSet(ids, templates, pixels, 0);
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    private final String[] ids;
+    private final ImageInArea[] templates;
+    // rgb values of each template, row by row
+    private final int[][] pixels;
+    // max mean difference of each color channel allowed, 0 to match exactly
+    private final int tolerance;
+
+    // *****************************************************************************************
+    // Methods, getting metadata
+    // *****************************************************************************************
+
+    public int size() {
+        return ids.length;
+    }
+
+    public ImageInArea get(String id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i].equals(id)) {return templates[i];}
+        }
+        return null;
+    }
+
+    // *****************************************************************************************
+    // Methods, matching templates
+    // *****************************************************************************************
+
+    // @return ids of the templates appeared in the given frame (in the order of the data map)
+    public Set<String> match(Image frame) {
+        int size = ids.length;
+        boolean[] matched = new boolean[size];
+        if (size < PARALLELISM_THRESHOLD) {
+            new MatchAction(frame, matched, 0, size).compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(new MatchAction(frame, matched, 0, size));
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (matched[i]) {
+                result.add(ids[i]);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    // *****************************************************************************************
+    // PackageMethods, used by `Resolution`
+    // *****************************************************************************************
+
+    TemplateSet scale(Resolution resolution) {
+        int size = ids.length;
+        ImageInArea[] scaledTemplates = new ImageInArea[size];
+        int[][] scaledPixels = new int[size][];
+        for (int i = 0; i < size; i++) {
+            scaledTemplates[i] = resolution.scale(templates[i]);
+            Image image = scaledTemplates[i].image();
+            scaledPixels[i] = image.rgbs(0, 0, image.width(), image.height(), null);
+        }
+        return new TemplateSet(ids, scaledTemplates, scaledPixels, resolution.matchTolerance());
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    private boolean match(Image frame, int index, int[] row) {
+        Area area = templates[index].area();
+        Image image = templates[index].image();
+        int[] expected = pixels[index];
+        int w = image.width(), h = image.height();
+        if ((area.x() + w > frame.width()) || (area.y() + h > frame.height())) {return false;}
+        if (tolerance != 0) {return frame.match(area, image, tolerance);}
+        for (int j = 0, offset = 0; j < h; j++, offset += w) {
+            frame.rgbs(area.x(), area.y() + j, w, 1, row);
+            if (!Arrays.equals(row, 0, w, expected, offset, offset + w)) {return false;}
+        }
+        return true;
+    }
+
+    // *****************************************************************************************
+    // InternalClasses
+    // *****************************************************************************************
+
+    private final class MatchAction extends RecursiveAction {
+
+        private final Image frame;
+        private final boolean[] matched;
+        private final int from;
+        private final int to;
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLELISM_THRESHOLD) {
+                int[] row = null;
+                for (int i = from; i < to; i++) {
+                    int w = templates[i].image().width();
+                    if ((row == null) || (row.length < w)) {
+                        row = new int[w];
+                    }
+                    matched[i] = match(frame, i, row);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new MatchAction(frame, matched, from, middle),
+                        new MatchAction(frame, matched, middle, to)
+                );
+            }
+        }
+
+        MatchAction(Image frame, boolean[] matched, int from, int to) {
+            this.frame = frame;
+            this.matched = matched;
+            this.from = from;
+            this.to = to;
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device;
+
+import program.common.basic.logger.Logger;
+import program.common.basic.vision.Area;
+import program.common.basic.vision.Image;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Latency calibrator, keeping the rolling distribution of the action-to-screen latency of a
+ * {@link SmartDevice}, i.e. how long it takes a tap to be visible on a screenshot.
+ *
+ * <p>Scripts are supposed to use the suggested delays, intervals and timeouts instead of
+ * hand-tuned constants, which waste time on fast devices and break on slow ones.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class LatencyCalibrator {
+
+    // number of the latest samples kept
+    private static final int WINDOW = 64;
+    // the suggestions fall back to the given values until this number of samples is reached
+    private static final int MIN_SAMPLES = 5;
+    // added to the suggested delays and timeouts, covering the jitter not seen yet
+    private static final int MARGIN = 100;
+
+    private final SmartDevice device;
+
+    // ring buffer of latencies (ms)
+    private final int[] samples = new int[WINDOW];
+    private int size = 0;
+    private int next = 0;
+
+    // *****************************************************************************************
+    // Methods, measuring latency
+    // *****************************************************************************************
+
+    // Note: The watched area is compared (by hash) with the one captured before the tap, so the
+    // tap must change it visibly, such as opening a dialog; The latency is measured until the
+    // capture of the first changed frame starts, not until it completes, so that the cost of the
+    // capture itself (tens to hundreds of ms by adb) is not counted.
+    //
+    // Note: No channel is locked during the measurement, see `SmartDevice.await(...)`.
+    //
+    // @param [tap] area to tap, at the base resolution
+    // @param [watch] area watched, at the base resolution
+    // @param [timeout] max duration (ms) to wait for the change
+    // @return the latency (ms, recorded), or -1 if nothing changed before the timeout
+    public int measure(Area tap, Area watch, int timeout) {
+        Area scaled = device.resolution().scale(watch);
+        long baseline = device.screenshot().hash(scaled);
+        device.tap(tap).join();
+        long tappedAt = System.nanoTime();
+        long deadline = tappedAt + timeout * 1_000_000L;
+        while (true) {
+            long capturedAt = System.nanoTime();
+            Image screenshot = device.screenshot();
+            if (screenshot.hash(scaled) != baseline) {
+                int latency = (int) ((capturedAt - tappedAt) / 1_000_000L);
+                record(latency);
+                return latency;
+            }
+            if (capturedAt >= deadline) {
+                Logger.warn("latency not measured (nothing changed) @ %s", watch.name());
+                return -1;
+            }
+        }
+    }
+
+    // @param [latency] latency (ms) observed, such as by `SmartDevice.await(...)`
+    public synchronized void record(int latency) {
+        samples[next] = Math.max(latency, 0);
+        next = (next + 1) % WINDOW;
+        size = Math.min(size + 1, WINDOW);
+    }
+
+    public synchronized void reset() {
+        size = next = 0;
+    }
+
+    // *****************************************************************************************
+    // Methods, getting distribution
+    // *****************************************************************************************
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // @param [percent] percentile, such as 95 for p95
+    // @return the latency (ms) at the given percentile of the samples, or -1 if none
+    public synchronized int percentile(double percent) {
+        if (size == 0) {return -1;}
+        int[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        // nearest rank
+        int rank = (int) Math.ceil(percent / 100 * size);
+        return sorted[Math.min(Math.max(rank, 1), size) - 1];
+    }
+
+    public synchronized String statText() {
+        if (size == 0) {return "no samples";}
+        return format("%d samples, p50 %dms, p95 %dms, p99 %dms",
+                size, percentile(50), percentile(95), percentile(99));
+    }
+
+    // *****************************************************************************************
+    // Methods, suggesting duration
+    // *****************************************************************************************
+
+    // Note: Each suggestion returns the fallback (the hand-tuned constant) until enough samples
+    // are recorded.
+    //
+    // @return how long (ms) to wait after an action before its effect can be captured
+    public synchronized int suggestDelay(int fallback) {
+        if (size < MIN_SAMPLES) {return fallback;}
+        return percentile(95) + MARGIN;
+    }
+
+    // @return how often (ms) to check for the effect of an action
+    public synchronized int suggestInterval(int fallback) {
+        if (size < MIN_SAMPLES) {return fallback;}
+        return Math.max(percentile(50), MARGIN);
+    }
+
+    // @return how long (ms) an action is given to take effect, before it is retried or failed
+    public synchronized int suggestTimeout(int fallback) {
+        if (size < MIN_SAMPLES) {return fallback;}
+        return 2 * percentile(99) + MARGIN;
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    LatencyCalibrator(SmartDevice device) {
+        this.device = device;
+    }
+
+}
@@ -16,8 +16,10 @@
  */
 package program.common.smart.device;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
 import program.common.basic.logger.Logger;
 import program.common.basic.resource.ResUtl;
 import program.common.basic.resource.conf.Config;
@@ -28,16 +30,31 @@ import program.common.basic.utility.WeakSet;
 import program.common.basic.vision.Area;
 import program.common.basic.vision.Image;
 import program.common.basic.vision.ImageInArea;
+import program.common.basic.vision.Resolution;
+import program.common.basic.vision.TemplateSet;
+import program.common.smart.device._impl.FrameGrabber;
 import program.common.smart.device._impl.ScreenCapture;
 import program.common.smart.device._impl.ScreenControl;
 import program.common.smart.device._impl.adb.ADBScreenCapture;
 import program.common.smart.device._impl.adb.ADBScreenControl;
 import program.common.smart.device._impl.adb.impl.ADB;
+import program.common.smart.device._impl.minicap.MinicapScreenCapture;
 import program.common.smart.device._impl.minitouch.MinitouchScreenControl;
+import program.common.smart.device._impl.screenrecord.ScreenrecordScreenCapture;
+import program.common.smart.device.model.AwaitPolicy;
+import program.common.smart.device.model.Condition;
+import program.common.smart.device.model.Gesture;
 
 import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Smart device.
@@ -69,101 +86,399 @@ public final class SmartDevice extends Configurable {
     // *****************************************************************************************
     // *****************************************************************************************
 
+    // Note: Capture, control and app management are independent channels, each locked by its
+    // own lock, so that a long capture does not block the touch input and vice versa; The
+    // lifecycle lock is held (read) by the operations and (write) by reinitializing, so that the
+    // channels are not released under the operations.
+    private final ReentrantReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    private final Lock captureLock = new ReentrantLock();
+    private final Lock controlLock = new ReentrantLock();
+    private final Lock appLock = new ReentrantLock();
+
+    // Note: Samples are recorded by `await(...)` (the ones met after a single tap) and by
+    // `LatencyCalibrator.measure(...)`, and are dropped on reinitializing.
+    private final @Getter LatencyCalibrator latency = new LatencyCalibrator(this);
+
     private ADB adb;
     private ScreenCapture capture;
     private ScreenControl control;
 
+    private Resolution resolution;
+    private boolean resolutionOverridden;
+
+    // *****************************************************************************************
+    // Methods, getting metadata
+    // *****************************************************************************************
+
+    // Note: Areas and templates given to this device are at the base resolution, and are scaled
+    // to this resolution internally; Screenshots are at this resolution.
+    public Resolution resolution() {
+        lock();
+        try {
+            return resolution;
+        } finally {
+            unlock();
+        }
+    }
+
+    // *****************************************************************************************
+    // Methods, ordering operations
+    // *****************************************************************************************
+
+    // Note: All channels are locked during the action, so that the operations of the action are
+    // not interleaved with the ones of other threads, such as a tap and the screenshot of its
+    // effect; Operations of this device can be called in the action.
+    public <T> T exclusively(Supplier<T> action) {
+        lock(captureLock, controlLock, appLock);
+        try {
+            return action.get();
+        } finally {
+            unlock(captureLock, controlLock, appLock);
+        }
+    }
+
     // *****************************************************************************************
     // Methods, controlling application
     // *****************************************************************************************
 
     public boolean isAppRunning(String packageName) {
-        acquireNotClosed();
-        return adb.isAppRunning(packageName);
+        lock(appLock);
+        try {
+            return adb.isAppRunning(packageName);
+        } finally {
+            unlock(appLock);
+        }
     }
 
     public void startApp(String packageName, String activityName) {
-        acquireNotClosed();
-        adb.startApp(packageName, activityName);
+        lock(appLock);
+        try {
+            adb.startApp(packageName, activityName);
+        } finally {
+            unlock(appLock);
+        }
     }
 
     public void stopApp(String packageName) {
-        acquireNotClosed();
-        adb.forceStopApp(packageName);
+        lock(appLock);
+        try {
+            adb.forceStopApp(packageName);
+        } finally {
+            unlock(appLock);
+        }
     }
 
     // *****************************************************************************************
     // Methods, capturing screen
     // *****************************************************************************************
 
-    public synchronized Image screenshot() {
-        acquireNotClosed();
-        return capture.screenshot();
+    public Image screenshot() {
+        lock(captureLock);
+        try {
+            return capture.screenshot();
+        } finally {
+            unlock(captureLock);
+        }
+    }
+
+    // Note: With `capture.streaming` enabled, the latest frame is returned if it was captured
+    // within the max age (without waiting for a capture); Otherwise, the same as `screenshot()`.
+    //
+    // @param [maxAge] max age (ms) of the screenshot
+    public Image screenshot(int maxAge) {
+        lock(captureLock);
+        try {
+            return capture.screenshot(maxAge);
+        } finally {
+            unlock(captureLock);
+        }
     }
 
-    public synchronized boolean isAppeared(ImageInArea target) {
-        return screenshot().match(target.area(), target.image());
+    // @param [areas] areas at the base resolution
+    // @return images of the given areas (in the same order), named after the areas
+    public List<Image> screenshot(List<Area> areas) {
+        lock(captureLock);
+        try {
+            return capture.screenshot(areas.stream().map(resolution::scale).toList());
+        } finally {
+            unlock(captureLock);
+        }
+    }
+
+    // Note: Only the area of the target is captured.
+    public boolean isAppeared(ImageInArea target) {
+        return isAppeared(target, 0);
+    }
+
+    // @param [maxAge] max age (ms) of the screenshot, see `screenshot(int)`
+    public boolean isAppeared(ImageInArea target, int maxAge) {
+        lock(captureLock);
+        try {
+            ImageInArea scaled = resolution.scale(target);
+            Area area = scaled.area();
+            Image image = scaled.image();
+            Area captured = new Area(
+                    area.name(), area.x(), area.y(), image.width(), image.height()
+            );
+            Image screenshot = capture.screenshot(List.of(captured), maxAge).get(0);
+            Area whole = new Area(0, 0, image.width(), image.height());
+            return screenshot.match(whole, image, resolution.matchTolerance());
+        } finally {
+            unlock(captureLock);
+        }
+    }
+
+    // @return ids of the templates appeared on screen (only one screenshot is taken)
+    public Set<String> appeared(TemplateSet templates) {
+        lock(captureLock);
+        try {
+            return resolution.scale(templates).match(capture.screenshot());
+        } finally {
+            unlock(captureLock);
+        }
     }
 
     // *****************************************************************************************
     // Methods, tapping on screen
     // *****************************************************************************************
 
-    public synchronized void tap(Area area) {
-        acquireNotClosed();
-        ThreadLocalRandom rand = ThreadLocalRandom.current();
-        int x = area.x(rand), y = area.y(rand);
-        Logger.info("tap (%d,%d) @ %s", x, y, area.name());
-        control.tap(x, y);
+    // @return a future completed once the tap is performed, see `ScreenControl`
+    public CompletableFuture<Void> tap(Area area) {
+        lock(controlLock);
+        try {
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            int x = area.x(rand), y = area.y(rand);
+            Logger.info("tap (%d,%d) @ %s", x, y, area.name());
+            return control.tap(resolution.x(x), resolution.y(y));
+        } finally {
+            unlock(controlLock);
+        }
     }
 
-    public synchronized void tapUntilAppeared(Area area, ImageInArea target, int interval) {
-        do {
-            tap(area);
-            Task.sleep(interval);
-        } while (!isAppeared(target));
+    // Note: The area is tapped until the target appears, at most once per interval, see
+    // `await(Condition, AwaitPolicy)`; Not tapped if the target has already appeared.
+    //
+    // @param [interval] min interval (ms) between taps, see `AwaitPolicy.tapInterval()`
+    public void tapUntilAppeared(Area area, ImageInArea target, int interval) {
+        await(Condition.appeared(target), tapUntil(area, interval));
     }
 
-    public synchronized void tapUntilDisappeared(Area area, ImageInArea target, int interval) {
-        do {
-            tap(area);
-            Task.sleep(interval);
-        } while (isAppeared(target));
+    public void tapUntilDisappeared(Area area, ImageInArea target, int interval) {
+        await(Condition.disappeared(target), tapUntil(area, interval));
+    }
+
+    // *****************************************************************************************
+    // Methods, awaiting condition
+    // *****************************************************************************************
+
+    // @param [timeout] max duration (ms) of the await, 0 to wait until the condition is met
+    // @return whether the condition is met
+    public boolean await(Condition condition, int timeout) {
+        return await(condition, AwaitPolicy.builder().timeout(timeout).build());
+    }
+
+    // Note: The condition is evaluated against the frames as they are captured, at intervals
+    // backing off from the base one (reset after each tap), so this method returns as soon as a
+    // frame meets it, rather than after a fixed sleep; Each frame evaluated is the newest one
+    // whose capture started after the previous one (and after the tap is performed), so with
+    // `capture.streaming` enabled, the frame kept by the grabber is taken if new enough.
+    //
+    // Note: If the condition is met after a single tap, the latency from the tap to the frame is
+    // recorded, which is conservative by up to the interval, see `latency()`.
+    //
+    // Note: The first frame is evaluated before the first tap, so the area is not tapped if the
+    // condition is already met.
+    //
+    // Note: No channel is locked between the frames and the taps, so other threads can use this
+    // device meanwhile; See `exclusively(Supplier)` if that is not expected.
+    //
+    // @return whether the condition is met (false once the timeout or max taps is reached)
+    public boolean await(Condition condition, AwaitPolicy policy) {
+        long start = System.nanoTime();
+        long deadline = (policy.timeout() == 0)
+                ? Long.MAX_VALUE : (start + policy.timeout() * 1_000_000L);
+        long nextTap = start;
+        long tappedAt = 0;
+        int taps = 0;
+        double interval = policy.baseInterval();
+        // the capture of the next frame evaluated must not start before
+        long capturedAfter = start;
+        while (true) {
+            Evaluation evaluation = evaluate(condition, capturedAfter);
+            if (evaluation.met) {
+                if (taps == 1) {
+                    latency.record((int) ((evaluation.capturedAt - tappedAt) / 1_000_000L));
+                }
+                return true;
+            }
+            capturedAfter = evaluation.capturedAt + 1;
+            long now = System.nanoTime();
+            if (now >= deadline) {return false;}
+            if ((policy.tap() != null) && (now >= nextTap)) {
+                if ((policy.maxTaps() != 0) && (taps >= policy.maxTaps())) {return false;}
+                tap(policy.tap()).join();
+                taps++;
+                now = tappedAt = capturedAfter = System.nanoTime();
+                nextTap = now + policy.tapInterval() * 1_000_000L;
+                interval = policy.baseInterval();
+            }
+            long wait = Math.min((long) interval * 1_000_000L, deadline - now);
+            if (policy.tap() != null) {
+                wait = Math.min(wait, nextTap - now);
+            }
+            Task.sleep((int) Math.max(wait / 1_000_000L, 0));
+            interval = Math.min(interval * policy.multiplier(), policy.maxInterval());
+        }
     }
 
     // *****************************************************************************************
     // Methods, pressing on screen
     // *****************************************************************************************
 
-    public synchronized void press(Area area, int duration) {
-        acquireNotClosed();
-        ThreadLocalRandom rand = ThreadLocalRandom.current();
-        int x = area.x(rand), y = area.y(rand);
-        Logger.info("press (%d,%d) @ %s, %dms", x, y, area.name(), duration);
-        control.press(x, y, duration);
+    // Note: This method returns once the press is sent, so that the caller can capture the
+    // screen during it; Wait for the future (such as by `join()`) to wait for the release.
+    //
+    // @return a future completed once the press is performed, see `ScreenControl`
+    public CompletableFuture<Void> press(Area area, int duration) {
+        lock(controlLock);
+        try {
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            int x = area.x(rand), y = area.y(rand);
+            Logger.info("press (%d,%d) @ %s, %dms", x, y, area.name(), duration);
+            return control.press(resolution.x(x), resolution.y(y), duration);
+        } finally {
+            unlock(controlLock);
+        }
     }
 
     // *****************************************************************************************
     // Methods, swiping on screen
     // *****************************************************************************************
 
-    public synchronized void swipe(Area area1, Area area2, int duration) {
-        acquireNotClosed();
-        ThreadLocalRandom rand = ThreadLocalRandom.current();
-        int x1 = area1.x(rand), y1 = area1.y(rand), x2 = area2.x(rand), y2 = area2.y(rand);
-        Logger.info(
-                "swipe (%d,%d) @ %s -> (%d,%d) @ %s, %dms",
-                x1, y1, area1.name(), x2, y2, area2.name(), duration
-        );
-        control.swipe(x1, y1, x2, y2, duration);
+    // @return a future completed once the swipe is performed, see `ScreenControl`
+    public CompletableFuture<Void> swipe(Area area1, Area area2, int duration) {
+        lock(controlLock);
+        try {
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            int x1 = area1.x(rand), y1 = area1.y(rand);
+            int x2 = area2.x(rand), y2 = area2.y(rand);
+            Logger.info(
+                    "swipe (%d,%d) @ %s -> (%d,%d) @ %s, %dms",
+                    x1, y1, area1.name(), x2, y2, area2.name(), duration
+            );
+            return control.swipe(
+                    resolution.x(x1), resolution.y(y1), resolution.x(x2), resolution.y(y2),
+                    duration
+            );
+        } finally {
+            unlock(controlLock);
+        }
+    }
+
+    // *****************************************************************************************
+    // Methods, performing gesture
+    // *****************************************************************************************
+
+    // Note: The whole gesture is sent at once (by minitouch), such as several taps in a row,
+    // which saves a round trip per extra action.
+    //
+    // @param [gesture] gesture at the base resolution
+    // @return a future completed once the gesture is performed, see `ScreenControl`
+    public CompletableFuture<Void> perform(Gesture gesture) {
+        lock(controlLock);
+        try {
+            Logger.info("gesture (%s)", gesture);
+            return control.perform(gesture.scale(resolution));
+        } finally {
+            unlock(controlLock);
+        }
     }
 
     // *****************************************************************************************
     // OverrideMethods, Configurable
     // *****************************************************************************************
 
+    // Note: Called with the monitor of this device held (see `Configurable`), which must not be
+    // locked by the operations, otherwise they would deadlock with the write lock here.
     @Override
     protected void release() {
+        lifecycleLock.writeLock().lock();
+        try {
+            release0();
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+    }
+
+    protected void reinitialize() {
+        lifecycleLock.writeLock().lock();
+        try {
+            reinitialize0();
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    private SmartDevice(Config config) {
+        super(config);
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // Note: Unlike `acquireNotClosed()`, the monitor of this device is not locked.
+    private void lock(Lock... channels) {
+        lifecycleLock.readLock().lock();
+        // the control is the last one initialized
+        if (control == null) {
+            lifecycleLock.readLock().unlock();
+            String message = "Configurable [SmartDevice] closed";
+            throw new InvocationException(message)
+                    .with("config_path", config.file().getAbsolutePath());
+        }
+        for (Lock channel : channels) {
+            channel.lock();
+        }
+    }
+
+    private void unlock(Lock... channels) {
+        for (int i = channels.length - 1; i >= 0; i--) {
+            channels[i].unlock();
+        }
+        lifecycleLock.readLock().unlock();
+    }
+
+    // Note: The condition is tested outside the lock, since it may be slow (such as ocr).
+    //
+    // @param [capturedAfter] System.nanoTime() the capture of the frame must not start before,
+    // see `ScreenCapture.frame(long)`
+    private Evaluation evaluate(Condition condition, long capturedAfter) {
+        ScreenCapture.Frame frame;
+        Resolution resolution;
+        lock(captureLock);
+        try {
+            frame = capture.frame(capturedAfter);
+            resolution = this.resolution;
+        } finally {
+            unlock(captureLock);
+        }
+        return new Evaluation(condition.test(frame.image(), resolution), frame.capturedAt());
+    }
+
+    private void release0() {
+        if (latency.size() > 0) {
+            Logger.info("device latency: %s", latency.statText());
+        }
+        if ((adb != null) && resolutionOverridden) {
+            adb.wmSizeReset();
+            resolutionOverridden = false;
+        }
+        resolution = null;
         if (adb != null) {
             adb.release(this);
             adb = null;
@@ -178,23 +493,55 @@ public final class SmartDevice extends Configurable {
         }
     }
 
-    protected void reinitialize() {
+    private void reinitialize0() {
         CaptureImpl captureImpl = config.getValueAsEnum("capture.impl", CaptureImpl.class);
         ControlImpl controlImpl = config.getValueAsEnum("control.impl", ControlImpl.class);
+        boolean captureStreaming = Boolean.parseBoolean(config.getValue("capture.streaming"));
         String adbdAddress = config.getValue("adbd.address");
         int adbdConnectionTimeout = config.getValueAsInt("adbd.connection-timeout");
 
+        // the device (or its resolution) may have changed
+        latency.reset();
         adb = ADB.of(this, adbdAddress, adbdConnectionTimeout);
+        // Note: The resolution is applied before the screen capture and control are initialized,
+        // because they may depend on it (e.g. minitouch scales coordinates by it).
+        String captureResolution = config.getValue("capture.resolution");
+        if (!"native".equals(captureResolution)) {
+            adb.wmSize(Resolution.parse(captureResolution));
+            resolutionOverridden = true;
+        }
+        resolution = adb.wmSize();
         capture = captureImpl.constructor.apply(config);
+        if (captureStreaming && !captureImpl.streaming) {
+            capture = new FrameGrabber(capture);
+        }
         control = controlImpl.constructor.apply(config);
     }
 
     // *****************************************************************************************
-    // InternalConstructors
+    // InternalStaticMethods
     // *****************************************************************************************
 
-    private SmartDevice(Config config) {
-        super(config);
+    private static AwaitPolicy tapUntil(Area area, int interval) {
+        return AwaitPolicy.builder().timeout(0).tap(area).tapInterval(interval).build();
+    }
+
+    // *****************************************************************************************
+    // InternalStaticClasses
+    // *****************************************************************************************
+
+    private static final class Evaluation {
+
+        // whether the frame meets the condition
+        private final boolean met;
+        // System.nanoTime() when the capture of the frame started
+        private final long capturedAt;
+
+        private Evaluation(boolean met, long capturedAt) {
+            this.met = met;
+            this.capturedAt = capturedAt;
+        }
+
     }
 
     // *****************************************************************************************
@@ -205,10 +552,15 @@ public final class SmartDevice extends Configurable {
     @RequiredArgsConstructor
     private enum CaptureImpl {
 
-        adb(ADBScreenCapture::new),
+        adb(ADBScreenCapture::new, false),
+        // not documented until the prebuilts (`.bin/minicap*`) are shipped, see `Minicap`
+        minicap(MinicapScreenCapture::new, true),
+        screenrecord(ScreenrecordScreenCapture::new, true),
         ;
 
         final Function<Config, ScreenCapture> constructor;
+        // whether the frames are streamed by the device, so no frame grabber is needed
+        final boolean streaming;
 
     }
 
@@ -0,0 +1,206 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl;
+
+import program.common.basic.exception.InvocationException;
+import program.common.basic.logger.Logger;
+import program.common.basic.task.Task;
+import program.common.basic.vision.Area;
+import program.common.basic.vision.Image;
+
+import java.util.List;
+
+/**
+ * Frame grabber, a {@link ScreenCapture} capturing continuously in the background by the given
+ * one, and keeping the latest frame with the time it was captured.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class FrameGrabber implements ScreenCapture {
+
+    // Note: The loop pauses if no frame has been requested for this duration, so that an idle
+    // device is not captured for nothing.
+    private static final long IDLE_NANOS = 3_000_000_000L;
+    // pause after a failed capture, such as the device being disconnected
+    private static final int RETRY_INTERVAL = 1000;
+
+    private final ScreenCapture delegate;
+    private final Thread thread;
+
+    // notified on each frame (or failure) published, and on each frame requested
+    private final Object signal = new Object();
+    // Note: The frame being captured is the back buffer, this is the front one, swapped as a
+    // whole once the back one is complete.
+    private volatile Frame latest;
+    private volatile Failure failure;
+    private volatile long lastRequested = System.nanoTime();
+
+    private volatile boolean closed = false;
+
+    // *****************************************************************************************
+    // OverrideMethods, ScreenCapture
+    // *****************************************************************************************
+
+    // Note: The frame is captured after this method is called, like the one of the delegate.
+    @Override
+    public Image screenshot() {
+        return awaitFrameCapturedAfter(System.nanoTime()).image();
+    }
+
+    @Override
+    public Image screenshot(int maxAge) {
+        long now = System.nanoTime();
+        Frame frame = latest;
+        if ((frame != null) && (now - frame.capturedAt() <= maxAge * 1_000_000L)) {
+            lastRequested = now;
+            return frame.image();
+        }
+        return awaitFrameCapturedAfter(now).image();
+    }
+
+    // Note: The areas are cropped from the whole frame, which is captured anyway.
+    @Override
+    public List<Image> screenshot(List<Area> areas, int maxAge) {
+        Image screenshot = screenshot(maxAge);
+        return areas.stream().map(screenshot::crop).toList();
+    }
+
+    // Note: The latest frame is returned if new enough, otherwise the caller waits for the
+    // capture in progress (if started at or after the given time) and the next one at most.
+    @Override
+    public Frame frame(long capturedAfter) {
+        return awaitFrameCapturedAfter(capturedAfter);
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public boolean closed() {
+        return closed;
+    }
+
+    // Note: The capture in progress (if any) is completed before the delegate is closed.
+    @Override
+    public void close() {
+        synchronized (signal) {
+            if (closed) {return;}
+            closed = true;
+            signal.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    public FrameGrabber(ScreenCapture delegate) {
+        this.delegate = delegate;
+        this.thread = new Thread(this::loop, "FrameGrabber#loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    private void loop() {
+        while (!closed) {
+            synchronized (signal) {
+                while (!closed && (System.nanoTime() - lastRequested > IDLE_NANOS)) {
+                    try {
+                        signal.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            if (closed) {return;}
+            // the time the capture starts, the frame is at least as new as it
+            long capturedAt = System.nanoTime();
+            try {
+                Frame frame = new Frame(delegate.screenshot(), capturedAt);
+                synchronized (signal) {
+                    latest = frame;
+                    signal.notifyAll();
+                }
+            } catch (RuntimeException e) {
+                if (closed) {return;}
+                Logger.warn("frame grabber failed to capture: %s", e);
+                synchronized (signal) {
+                    failure = new Failure(e, capturedAt);
+                    signal.notifyAll();
+                }
+                Task.sleep(RETRY_INTERVAL);
+            }
+        }
+    }
+
+    // Note: The caller waits for the capture in progress (if started before the given time) and
+    // the next one at most.
+    private Frame awaitFrameCapturedAfter(long time) {
+        synchronized (signal) {
+            lastRequested = System.nanoTime();
+            signal.notifyAll();
+            while (true) {
+                if (closed) {
+                    String message = "Frame grabber closed";
+                    throw new InvocationException(message);
+                }
+                Frame frame = latest;
+                if ((frame != null) && (frame.capturedAt() >= time)) {return frame;}
+                Failure failure = this.failure;
+                if ((failure != null) && (failure.failedAt >= time)) {
+                    throw new InvocationException(failure.cause);
+                }
+                try {
+                    signal.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InvocationException(e);
+                }
+            }
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticClasses
+    // *****************************************************************************************
+
+    private static final class Failure {
+
+        private final RuntimeException cause;
+        // System.nanoTime() when the failed capture started
+        private final long failedAt;
+
+        private Failure(RuntimeException cause, long failedAt) {
+            this.cause = cause;
+            this.failedAt = failedAt;
+        }
+
+    }
+
+}
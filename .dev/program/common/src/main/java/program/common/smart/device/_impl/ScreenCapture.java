@@ -16,9 +16,14 @@
  */
 package program.common.smart.device._impl;
 
+import lombok.Getter;
+import lombok.experimental.Accessors;
 import program.common.basic.resource.SilentCloseable;
 import program.common.basic.vision.Area;
 import program.common.basic.vision.Image;
+import program.common.basic.vision.Resolution;
+
+import java.util.List;
 
 /**
  * Screen capture.
@@ -28,12 +33,67 @@ import program.common.basic.vision.Image;
  */
 public interface ScreenCapture extends SilentCloseable {
 
-    Area SCREEN_AREA = new Area("SCREEN", 0, 0, 1280, 720);
+    // the whole screen at the base resolution
+    Area SCREEN_AREA = new Area(
+            "SCREEN", 0, 0, Resolution.BASE.width(), Resolution.BASE.height()
+    );
 
     // *****************************************************************************************
     // Methods, capturing screen
     // *****************************************************************************************
 
+    // Note: The image is at the resolution of the display, see `Resolution` for scaling.
     Image screenshot();
 
+    // Note: Implementations should override this method if they can capture parts of the screen
+    // more cheaply than the whole screen.
+    //
+    // @return images of the given areas (in the same order), named after the areas
+    default List<Image> screenshot(List<Area> areas) {
+        Image screenshot = screenshot();
+        return areas.stream().map(screenshot::crop).toList();
+    }
+
+    // Note: Implementations keeping the latest frame (see `FrameGrabber`) return it if it was
+    // captured within the max age, others capture the screen as usual.
+    //
+    // @param [maxAge] max age (ms) of the frame returned
+    default Image screenshot(int maxAge) {
+        return screenshot();
+    }
+
+    // @param [maxAge] max age (ms) of the frame the images are from
+    // @return images of the given areas (in the same order), named after the areas
+    default List<Image> screenshot(List<Area> areas, int maxAge) {
+        return screenshot(areas);
+    }
+
+    // Note: Implementations keeping the latest frame (see `FrameGrabber`) return it if its
+    // capture started at or after the given time, without waiting for the next one; Others
+    // capture the screen as usual (starting after the call, so after the given time as well).
+    //
+    // @param [capturedAfter] System.nanoTime() the capture of the frame must not start before
+    default Frame frame(long capturedAfter) {
+        long capturedAt = System.nanoTime();
+        return new Frame(screenshot(), capturedAt);
+    }
+
+    // *****************************************************************************************
+    // Classes
+    // *****************************************************************************************
+
+    @Accessors(fluent = true)
+    final class Frame {
+
+        private final @Getter Image image;
+        // System.nanoTime() when the capture started, the frame is at least as new as it
+        private final @Getter long capturedAt;
+
+        public Frame(Image image, long capturedAt) {
+            this.image = image;
+            this.capturedAt = capturedAt;
+        }
+
+    }
+
 }
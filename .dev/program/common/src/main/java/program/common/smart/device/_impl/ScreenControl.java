@@ -17,6 +17,9 @@
 package program.common.smart.device._impl;
 
 import program.common.basic.resource.SilentCloseable;
+import program.common.smart.device.model.Gesture;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Screen control.
@@ -26,22 +29,33 @@ import program.common.basic.resource.SilentCloseable;
  */
 public interface ScreenControl extends SilentCloseable {
 
+    // Note: Each gesture returns a future completed once the gesture has been performed on the
+    // device, the implementations may return before that (without parking the caller), so that
+    // the caller can do something else in the meantime, such as capturing the screen.
+
     // *****************************************************************************************
     // Methods, tapping on screen
     // *****************************************************************************************
 
-    void tap(int x, int y);
+    CompletableFuture<Void> tap(int x, int y);
 
     // *****************************************************************************************
     // Methods, pressing on screen
     // *****************************************************************************************
 
-    void press(int x, int y, int duration);
+    CompletableFuture<Void> press(int x, int y, int duration);
 
     // *****************************************************************************************
     // Methods, swiping on screen
     // *****************************************************************************************
 
-    void swipe(int x1, int y1, int x2, int y2, int duration);
+    CompletableFuture<Void> swipe(int x1, int y1, int x2, int y2, int duration);
+
+    // *****************************************************************************************
+    // Methods, performing gesture
+    // *****************************************************************************************
+
+    // @param [gesture] gesture at the resolution of the device
+    CompletableFuture<Void> perform(Gesture gesture);
 
 }
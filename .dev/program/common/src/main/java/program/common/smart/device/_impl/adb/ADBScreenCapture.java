@@ -18,9 +18,16 @@ package program.common.smart.device._impl.adb;
 
 import lombok.experimental.Accessors;
 import program.common.basic.resource.conf.Config;
+import program.common.basic.vision.Area;
 import program.common.basic.vision.Image;
 import program.common.smart.device._impl.ScreenCapture;
 import program.common.smart.device._impl.adb.impl.ADB;
+import program.common.smart.device._impl.adb.impl.ADB.ScreencapFormat;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * {@link ScreenCapture} implementation based on adb.
@@ -32,6 +39,9 @@ import program.common.smart.device._impl.adb.impl.ADB;
 public final class ADBScreenCapture implements ScreenCapture {
 
     private final ADB adb;
+    // the format configured, or null to select one automatically
+    private final ScreencapFormat format;
+    private final ScreencapFormatSelector selector;
 
     // *****************************************************************************************
     // OverrideMethods, ScreenCapture
@@ -39,7 +49,22 @@ public final class ADBScreenCapture implements ScreenCapture {
 
     @Override
     public Image screenshot() {
-        return adb.screencap();
+        if (format != null) {return adb.screencap(format);}
+        return select(0, selected -> {
+            Image image = adb.screencap(selected);
+            return new Captured<>(image, image.height());
+        });
+    }
+
+    @Override
+    public List<Image> screenshot(List<Area> areas) {
+        if (format != null) {return adb.screencap(areas, format);}
+        int rows = 0;
+        for (Area area : areas) {
+            rows = Math.max(rows, area.y() + area.height());
+        }
+        int bottom = rows;
+        return select(bottom, selected -> new Captured<>(adb.screencap(areas, selected), bottom));
     }
 
     // *****************************************************************************************
@@ -64,7 +89,64 @@ public final class ADBScreenCapture implements ScreenCapture {
         String adbdAddress = config.getValue("adbd.address");
         int adbdConnectionTimeout = config.getValueAsInt("adbd.connection-timeout");
 
+        String adbFormat = config.getValue("capture.adb.format");
+
         adb = ADB.of(this, adbdAddress, adbdConnectionTimeout);
+        if ("auto".equals(adbFormat)) {
+            format = null;
+            Set<ScreencapFormat> candidates = EnumSet.allOf(ScreencapFormat.class);
+            // not probed until the binary is bundled for the abi of the device
+            if (!adb.lz4Bundled()) {
+                candidates.remove(ScreencapFormat.lz4);
+            }
+            selector = new ScreencapFormatSelector(candidates);
+        } else {
+            format = ScreencapFormat.valueOf(adbFormat);
+            selector = null;
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // Note: The capture is timed for the selector; A format failing before it has ever worked
+    // is regarded as unavailable (such as `gzip` missing on the device), and the next one is
+    // tried.
+    //
+    // @param [rows] number of rows needed (down to the last one), 0 for the whole screen
+    private <T> T select(int rows, Function<ScreencapFormat, Captured<T>> capture) {
+        while (true) {
+            ScreencapFormat format = selector.select(rows);
+            long start = System.nanoTime();
+            Captured<T> captured;
+            try {
+                captured = capture.apply(format);
+            } catch (RuntimeException e) {
+                if ((format == ScreencapFormat.png) || selector.measured(format)) {throw e;}
+                selector.unavailable(format, e);
+                continue;
+            }
+            selector.record(format, System.nanoTime() - start, captured.rows);
+            return captured.result;
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticClasses
+    // *****************************************************************************************
+
+    private static final class Captured<T> {
+
+        private final T result;
+        // number of rows captured (down to the last row needed)
+        private final int rows;
+
+        private Captured(T result, int rows) {
+            this.result = result;
+            this.rows = rows;
+        }
+
     }
 
 }
@@ -17,9 +17,14 @@
 package program.common.smart.device._impl.adb;
 
 import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
 import program.common.basic.resource.conf.Config;
+import program.common.basic.task.Task;
 import program.common.smart.device._impl.ScreenControl;
 import program.common.smart.device._impl.adb.impl.ADB;
+import program.common.smart.device.model.Gesture;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * {@link ScreenControl} implementation based on adb.
@@ -36,19 +41,47 @@ public final class ADBScreenControl implements ScreenControl {
     // OverrideMethods, ScreenControl
     // *****************************************************************************************
 
+    // Note: The shell command returns after the gesture, so the futures are completed already.
+
     @Override
-    public void tap(int x, int y) {
+    public CompletableFuture<Void> tap(int x, int y) {
         adb.tap(x, y);
+        return CompletableFuture.completedFuture(null);
     }
 
     @Override
-    public void press(int x, int y, int duration) {
+    public CompletableFuture<Void> press(int x, int y, int duration) {
         adb.swipe(x, y, x, y, duration);
+        return CompletableFuture.completedFuture(null);
     }
 
     @Override
-    public void swipe(int x1, int y1, int x2, int y2, int duration) {
+    public CompletableFuture<Void> swipe(int x1, int y1, int x2, int y2, int duration) {
         adb.swipe(x1, y1, x2, y2, duration);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Note: `input` supports one contact only, so the strokes are performed one by one, each as
+    // a tap or a swipe from its first keyframe to its last one (the others are ignored).
+    @Override
+    public CompletableFuture<Void> perform(Gesture gesture) {
+        if (gesture.contacts() > 1) {
+            String message = "Concurrent contacts of gesture not supported by adb";
+            throw new InvocationException(message)
+                    .with("gesture", gesture);
+        }
+        long start = System.currentTimeMillis();
+        for (Gesture.Stroke stroke : gesture.strokes()) {
+            Task.sleep((int) (start + stroke.downTime() - System.currentTimeMillis()));
+            int last = stroke.size() - 1;
+            if (last == 0) {
+                adb.tap(stroke.x(0), stroke.y(0));
+            } else {
+                int duration = stroke.upTime() - stroke.downTime();
+                adb.swipe(stroke.x(0), stroke.y(0), stroke.x(last), stroke.y(last), duration);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
     }
 
     // *****************************************************************************************
@@ -0,0 +1,143 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl.adb;
+
+import program.common.basic.logger.Logger;
+import program.common.smart.device._impl.adb.impl.ADB.ScreencapFormat;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Screencap format selector, choosing the format costing the least time for the rows needed, as
+ * measured on the link and the device actually used (bandwidth and cpu both included).
+ *
+ * <p>The cost of png is per capture, since the whole screen is encoded (and transferred) anyway;
+ * The costs of the others are per row, since the stream is closed after the last row needed.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+final class ScreencapFormatSelector {
+
+    // every this number of captures, the least recently measured format is measured again, so
+    // that the choice follows the changes of the link and the load of the device
+    private static final int PROBE_INTERVAL = 32;
+    // weight of the latest measurement in the moving average
+    private static final double ALPHA = 0.25;
+
+    // formats to select from
+    private final Set<ScreencapFormat> candidates;
+    // moving average of nanoseconds per capture (png) or per row (others), absent if not
+    // measured yet
+    private final Map<ScreencapFormat, Double> costs = new EnumMap<>(ScreencapFormat.class);
+    // the capture count when each format was measured last
+    private final Map<ScreencapFormat, Long> measuredAt = new EnumMap<>(ScreencapFormat.class);
+    private long count = 0;
+    // rows of the whole screen (the most rows recorded), 0 if unknown
+    private int screenRows = 0;
+    // the format selected for the whole screen last, logged when changed
+    private ScreencapFormat screenBest;
+
+    // *****************************************************************************************
+    // Methods, selecting format
+    // *****************************************************************************************
+
+    // Note: Each format is measured once first, then the one estimated the least for the rows
+    // is selected, except for a probe every `PROBE_INTERVAL` captures.
+    //
+    // @param [rows] number of rows needed (down to the last one), 0 for the whole screen
+    synchronized ScreencapFormat select(int rows) {
+        count++;
+        int needed = (rows == 0) ? screenRows : rows;
+        ScreencapFormat best = null;
+        for (ScreencapFormat format : candidates) {
+            if (!costs.containsKey(format)) {return format;}
+            if ((best == null) || (estimate(format, needed) < estimate(best, needed))) {
+                best = format;
+            }
+        }
+        ScreencapFormat oldest = null;
+        for (ScreencapFormat format : candidates) {
+            if ((format != best)
+                    && ((oldest == null) || (measuredAt.get(format) < measuredAt.get(oldest)))) {
+                oldest = format;
+            }
+        }
+        if ((oldest != null) && (count % PROBE_INTERVAL == 0)) {return oldest;}
+        if ((rows == 0) && (best != screenBest)) {
+            Logger.info("screencap format selected: %s (%s)", best, costText());
+            screenBest = best;
+        }
+        return best;
+    }
+
+    // @param [rows] number of rows captured (down to the last row needed)
+    synchronized void record(ScreencapFormat format, long nanos, int rows) {
+        double cost = (format == ScreencapFormat.png)
+                ? nanos : ((double) nanos / Math.max(rows, 1));
+        Double prev = costs.get(format);
+        costs.put(format, (prev == null) ? cost : (prev + ALPHA * (cost - prev)));
+        measuredAt.put(format, count);
+        screenRows = Math.max(screenRows, rows);
+    }
+
+    // @return whether the format has been measured (i.e. worked before)
+    synchronized boolean measured(ScreencapFormat format) {
+        return costs.containsKey(format);
+    }
+
+    // Note: Only formats never measured are supposed to be given, the failures of the others
+    // are more likely of the link than of the format.
+    synchronized void unavailable(ScreencapFormat format, RuntimeException cause) {
+        Logger.warn("screencap format unavailable: %s (%s)", format, cause);
+        candidates.remove(format);
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    // @param [candidates] formats to select from, including png (never unavailable)
+    ScreencapFormatSelector(Set<ScreencapFormat> candidates) {
+        this.candidates = EnumSet.copyOf(candidates);
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // @return estimated nanoseconds to capture the given number of rows in the given format
+    private double estimate(ScreencapFormat format, int rows) {
+        double cost = costs.get(format);
+        return (format == ScreencapFormat.png) ? cost : (cost * rows);
+    }
+
+    private String costText() {
+        StringBuilder bu = new StringBuilder();
+        costs.forEach((format, cost) -> {
+            if (!bu.isEmpty()) {bu.append(", ");}
+            bu.append(format).append(' ').append((format == ScreencapFormat.png)
+                    ? String.format("%.1fms/capture", cost / 1_000_000)
+                    : String.format("%.1fus/row", cost / 1000));
+        });
+        return bu.toString();
+    }
+
+}
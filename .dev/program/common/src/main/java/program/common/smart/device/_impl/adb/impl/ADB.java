@@ -19,6 +19,7 @@ package program.common.smart.device._impl.adb.impl;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import program.common.basic.exception.InvocationException;
+import program.common.basic.logger.Logger;
 import program.common.basic.resource.ResUtl;
 import program.common.basic.resource.SilentCloseable;
 import program.common.basic.task.Task;
@@ -26,11 +27,16 @@ import program.common.basic.utility.StrUtl;
 import program.common.basic.utility.WeakSet;
 import program.common.basic.vision.Area;
 import program.common.basic.vision.Image;
+import program.common.basic.vision.Resolution;
 import program.common.smart.device._impl.ScreenCapture;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static java.lang.String.format;
 
@@ -43,6 +49,8 @@ import static java.lang.String.format;
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 public final class ADB implements SilentCloseable {
 
+    private static final Logger logger = new Logger(ADB.class);
+
     // *****************************************************************************************
     // StaticMethods, initializing instance
     // *****************************************************************************************
@@ -87,6 +95,11 @@ public final class ADB implements SilentCloseable {
     private final WeakSet<Object> holders = new WeakSet<>();
     private final WeakSet<Runnable> callbacksBeforeClosing = new WeakSet<>();
 
+    // lazily initialized by `screencap(List<Area>)`, 0 if unknown
+    private volatile int sdkVersion = 0;
+    // whether the lz4 binary has been pushed, see `screencap(List<Area>, ScreencapFormat)`
+    private volatile boolean lz4Deployed = false;
+
     // *****************************************************************************************
     // Methods, getting metadata
     // *****************************************************************************************
@@ -219,25 +232,101 @@ public final class ADB implements SilentCloseable {
         openAndSkipAll(bu.toString());
     }
 
+    // *****************************************************************************************
+    // Methods, opening stream - shell:<wm>
+    // *****************************************************************************************
+
+    // Note: The longer side is taken as the width, since the game runs in landscape.
+    //
+    // @return the override size if any, otherwise the physical size
+    public Resolution wmSize() {
+        Resolution resolution = readWmSize(false);
+        if (resolution.width() >= resolution.height()) {return resolution;}
+        return Resolution.of(resolution.height(), resolution.width());
+    }
+
+    // @param [resolution] the size in landscape, rotated if the display is portrait naturally
+    public void wmSize(Resolution resolution) {
+        Resolution physical = readWmSize(true);
+        boolean portrait = (physical.width() < physical.height());
+        int width = portrait ? resolution.height() : resolution.width();
+        int height = portrait ? resolution.width() : resolution.height();
+        String widthStr = StrUtl.decimal(width);
+        String heightStr = StrUtl.decimal(height);
+        // shell:wm size <width>x<height>\0
+        int n = 16 + widthStr.length() + heightStr.length();
+        StringBuilder bu = new StringBuilder(n);
+        bu.append("shell:wm size ").append(widthStr).append('x').append(heightStr).append('\0');
+        openAndSkipAll(bu.toString());
+    }
+
+    public void wmSizeReset() {
+        String destination = "shell:wm size reset\0";
+        openAndSkipAll(destination);
+    }
+
     // *****************************************************************************************
     // Methods, opening stream - shell:<screencap>
     // *****************************************************************************************
 
+    // Note: The image is at the resolution of the display, which may differ from the base one.
     public Image screencap() {
-        Area area = ScreenCapture.SCREEN_AREA;
+        String name = ScreenCapture.SCREEN_AREA.name();
         String destination = "shell:screencap -p\0";
-        // noinspection resource (adb stream will be auto closed on CLSE received)
-        InputStream stream = fixLineSepInShellIfNeeded(open(destination).input());
-        Image image = Image.read(area.name(), stream);
-        if ((area.width() != image.width()) || (area.height() != image.height())) {
-            String message = "Unexpected screen size";
-            throw new InvocationException(message)
-                    .with("expected_size", format("%dx%d", area.width(), area.height()))
-                    .with("provided_size", format("%dx%d", image.width(), image.height()));
+        Image image;
+        try (ADBStream adbStream = open(destination)) {
+            InputStream stream = fixLineSepInShellIfNeeded(adbStream.input());
+            long start = System.nanoTime();
+            image = Image.read(name, stream);
+            long duration = (System.nanoTime() - start) / 1000;
+            logger.debug("screencap received and decoded in %sus", duration);
         }
         return image;
     }
 
+    // @return the whole screen, captured in the given format
+    public Image screencap(ScreencapFormat format) {
+        if (format == ScreencapFormat.png) {return screencap();}
+        return screencapRaw(null, format).get(0);
+    }
+
+    // @return images of the given areas (in the same order), named after the areas
+    public List<Image> screencap(List<Area> areas) {
+        return screencap(areas, ScreencapFormat.raw);
+    }
+
+    // Note: Except png, the raw framebuffer is read (compressed on the device by gzip or lz4),
+    // so only the rows covered by the given areas are decoded; The stream is closed as soon as
+    // the last needed row has been read, so the rows below are not transferred (or compressed).
+    // The png is decoded down to the last needed row as well.
+    //
+    // @return images of the given areas (in the same order), named after the areas
+    public List<Image> screencap(List<Area> areas, ScreencapFormat format) {
+        if (format != ScreencapFormat.png) {return screencapRaw(areas, format);}
+        Area bounds = Area.union(ScreenCapture.SCREEN_AREA.name(), areas);
+        String destination = "shell:screencap -p\0";
+        Image image;
+        try (ADBStream adbStream = open(destination)) {
+            InputStream stream = fixLineSepInShellIfNeeded(adbStream.input());
+            image = Image.read(bounds.name(), stream, bounds);
+        }
+        List<Image> result = new ArrayList<>(areas.size());
+        for (Area area : areas) {
+            result.add(image.crop(new Area(
+                    area.name(), area.x() - bounds.x(), area.y() - bounds.y(),
+                    area.width(), area.height()
+            )));
+        }
+        return result;
+    }
+
+    // Note: The binary is not shipped with the program (yet), see `ScreencapFormat.lz4`.
+    //
+    // @return whether the lz4 binary is bundled for the abi of the device
+    public boolean lz4Bundled() {
+        return new File(ResUtl.home("/.bin/lz4/%s/lz4", getpropCpuAbi())).isFile();
+    }
+
     // *****************************************************************************************
     // Methods, opening stream - sync:<file>
     // *****************************************************************************************
@@ -312,4 +401,193 @@ public final class ADB implements SilentCloseable {
         REFERENCES.remove(this);
     }
 
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // @param [physical] true to ignore the override size
+    private Resolution readWmSize(boolean physical) {
+        String destination = "shell:wm size\0";
+        // Physical size: <width>x<height>
+        // Override size: <width>x<height> (only if overridden)
+        String physicalSize = null, overrideSize = null;
+        for (String line : openAndReadAllString(destination).split("\n")) {
+            int indexOfColon = line.indexOf(':');
+            if (indexOfColon == -1) {continue;}
+            String value = line.substring(indexOfColon + 1).trim();
+            if (line.startsWith("Physical size")) {
+                physicalSize = value;
+            } else if (line.startsWith("Override size")) {
+                overrideSize = value;
+            }
+        }
+        String size = (physical || (overrideSize == null)) ? physicalSize : overrideSize;
+        if (size == null) {
+            String message = "Failed to get size of display";
+            throw new InvocationException(message)
+                    .with("socket_address", socket.address);
+        }
+        return Resolution.parse(size);
+    }
+
+    // @param [areas] areas to capture, or null to capture the whole screen
+    private List<Image> screencapRaw(List<Area> areas, ScreencapFormat format) {
+        int sdkVersion = this.sdkVersion;
+        if (sdkVersion == 0) {
+            this.sdkVersion = sdkVersion = getpropSdkVersion();
+        }
+        if (format == ScreencapFormat.lz4) {
+            deployLz4IfNeeded();
+        }
+        // exec:<command>\0 (raw bytes, no need to fix line separator)
+        String destination = switch (format) {
+            case gzip -> "exec:screencap | gzip -1\0";
+            case lz4 -> "exec:screencap | /data/local/tmp/lz4 -1 -c\0";
+            default -> "exec:screencap\0";
+        };
+        try (ADBStream stream = open(destination)) {
+            InputStream input = switch (format) {
+                case gzip -> new GZIPInputStream(stream.input(), 64 * 1024);
+                case lz4 -> new LZ4FrameInputStream(stream.input());
+                default -> stream.input();
+            };
+            return readRawScreencap(input, sdkVersion, areas);
+        } catch (IOException e) {
+            throw new InvocationException(e)
+                    .with("socket_address", socket.address)
+                    .with("screencap_format", format);
+        }
+    }
+
+    private List<Image> readRawScreencap(InputStream input, int sdkVersion, List<Area> areas)
+            throws IOException {
+        // header: width, height, format [, colorspace (since android 9)]
+        int width = readIntLE(input);
+        int height = readIntLE(input);
+        int format = readIntLE(input);
+        if (sdkVersion >= 28) {
+            input.skipNBytes(4);
+        }
+        // 1: RGBA_8888, 2: RGBX_8888, 5: BGRA_8888
+        if ((format != 1) && (format != 2) && (format != 5)) {
+            String message = "Unsupported pixel format of raw screencap";
+            throw new InvocationException(message)
+                    .with("pixel_format", format);
+        }
+        if (areas == null) {
+            areas = List.of(new Area(ScreenCapture.SCREEN_AREA.name(), 0, 0, width, height));
+        }
+        boolean bgr = (format == 5);
+        int top = height, bottom = 0;
+        for (Area area : areas) {
+            if ((area.x() < 0) || (area.y() < 0)
+                    || (area.x() + area.width() > width)
+                    || (area.y() + area.height() > height)) {
+                String message = "Area out of screen";
+                throw new InvocationException(message)
+                        .with("area", area)
+                        .with("screen_size", format("%dx%d", width, height));
+            }
+            top = Math.min(top, area.y());
+            bottom = Math.max(bottom, area.y() + area.height());
+        }
+        int n = areas.size();
+        int[][] rasters = new int[n][];
+        for (int k = 0; k < n; k++) {
+            Area area = areas.get(k);
+            rasters[k] = new int[area.width() * area.height()];
+        }
+        int rowSize = width * 4;
+        byte[] row = new byte[rowSize];
+        input.skipNBytes((long) top * rowSize);
+        for (int y = top; y < bottom; y++) {
+            boolean needed = false;
+            for (Area area : areas) {
+                if ((y >= area.y()) && (y < area.y() + area.height())) {
+                    needed = true;
+                    break;
+                }
+            }
+            if (!needed) {
+                input.skipNBytes(rowSize);
+                continue;
+            }
+            if (input.readNBytes(row, 0, rowSize) < rowSize) {
+                String message = "ADB stream closed";
+                throw new InvocationException(message)
+                        .with("socket_address", socket.address);
+            }
+            for (int k = 0; k < n; k++) {
+                Area area = areas.get(k);
+                int j = y - area.y();
+                if ((j < 0) || (j >= area.height())) {continue;}
+                int[] raster = rasters[k];
+                int w = area.width();
+                for (int i = 0, p = area.x() * 4, q = j * w; i < w; i++, p += 4, q++) {
+                    int c0 = row[p] & 0xFF, c1 = row[p + 1] & 0xFF, c2 = row[p + 2] & 0xFF;
+                    raster[q] = bgr ? ((c2 << 16) | (c1 << 8) | c0)
+                            : ((c0 << 16) | (c1 << 8) | c2);
+                }
+            }
+        }
+        List<Image> result = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            Area area = areas.get(k);
+            result.add(Image.of(area.name(), area.width(), area.height(), rasters[k]));
+        }
+        return result;
+    }
+
+    // Note: The static lz4 binary is pushed from `.bin/lz4/<abi>/lz4` once.
+    private void deployLz4IfNeeded() {
+        if (lz4Deployed) {return;}
+        synchronized (this) {
+            if (lz4Deployed) {return;}
+            if (shell("find /data/local/tmp -name lz4").isBlank()) {
+                String local = ResUtl.home("/.bin/lz4/%s/lz4", getpropCpuAbi());
+                // checked before pushing, since a failed push leaves a partial file
+                if (!new File(local).isFile()) {
+                    String message = "LZ4 binary not bundled for the abi";
+                    throw new InvocationException(message)
+                            .with("local_file_path", local);
+                }
+                Logger.info("pushing %s ...", local);
+                push(local, "/data/local/tmp/lz4", "0777");
+            }
+            lz4Deployed = true;
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static int readIntLE(InputStream input) throws IOException {
+        byte[] bytes = new byte[4];
+        if (input.readNBytes(bytes, 0, 4) < 4) {
+            String message = "Unexpected end of raw screencap header";
+            throw new InvocationException(message);
+        }
+        return (bytes[0] & 0xFF) | ((bytes[1] & 0xFF) << 8)
+                | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 24);
+    }
+
+    // *****************************************************************************************
+    // Enums
+    // *****************************************************************************************
+
+    public enum ScreencapFormat {
+
+        // png encoded on the device, the least bytes but the most cpu of the device
+        png,
+        // raw framebuffer, the most bytes but the least cpu
+        raw,
+        // raw framebuffer compressed by `gzip -1` (toybox) on the device
+        gzip,
+        // raw framebuffer compressed by `lz4 -1` on the device, by the static binary pushed from
+        // `.bin/lz4/<abi>/lz4` (to be dropped in, not shipped)
+        lz4,
+
+    }
+
 }
@@ -21,6 +21,7 @@ import program.common.basic.logger.Logger;
 import program.common.basic.resource.SilentCloseable;
 import program.common.basic.task.Task;
 
+import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -150,9 +151,15 @@ final class ADBSocket implements SilentCloseable {
         this.delegate = new Socket();
         Logger.info("connecting adbd...");
         try {
+            // Note: Each package is written at once (buffered) and sent without delay, otherwise
+            // the small ones (such as OKAY after each WRTE received) would wait for the delayed
+            // ack of the previous segment (up to 40ms per package).
+            delegate.setTcpNoDelay(true);
             delegate.connect(address);
             this.input = delegate.getInputStream();
-            this.output = delegate.getOutputStream();
+            this.output = new BufferedOutputStream(
+                    delegate.getOutputStream(), 24 + ADBPackage.MAX_PAYLOAD
+            );
         } catch (IOException e) {
             throw new InvocationException(e)
                     .with("socket_address", address);
@@ -278,6 +285,24 @@ final class ADBSocket implements SilentCloseable {
             }
         }
 
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            if (len == 0) {return 0;}
+            for (int n; (n = input.read(buf, off, len)) > 0; ) {
+                int j = off;
+                for (int i = off, l = off + n; i < l; i++) {
+                    byte b = buf[i];
+                    if (b == '\r') {
+                        int next = (i + 1 < l) ? buf[i + 1] : input.peek();
+                        if (next == '\n') {continue;}
+                    }
+                    buf[j++] = b;
+                }
+                if (j > off) {return j - off;}
+            }
+            return -1;
+        }
+
         FixWindowsLineSepInputStream(ADBStream.Input input) {
             this.input = input;
         }
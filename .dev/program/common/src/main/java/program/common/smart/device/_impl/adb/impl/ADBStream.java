@@ -167,7 +167,8 @@ public final class ADBStream implements SilentCloseable {
             }
             buf[off] = b;
             int n = 1;
-            while (ensureBufferAlready()) {
+            len--;
+            while ((len > 0) && ensureBufferAlready()) {
                 int limit = buffer.length - offset;
                 if (len <= limit) {
                     System.arraycopy(buffer, offset, buf, off + n, len);
@@ -0,0 +1,228 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl.adb.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * LZ4 frame input stream, decompressing the output of the `lz4` command line tool.
+ *
+ * <p>Both independent and linked blocks are supported; Checksums are skipped (not verified),
+ * the transport is trusted.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+final class LZ4FrameInputStream extends InputStream {
+
+    private static final int MAGIC = 0x184D2204;
+    // magic of skippable frames: 0x184D2A50 ~ 0x184D2A5F
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    // max distance of matches, i.e. the history kept for linked blocks
+    private static final int WINDOW = 64 * 1024;
+
+    private final InputStream input;
+
+    // history (linked blocks only) followed by the decompressed block
+    private byte[] buffer = new byte[0];
+    private byte[] block = new byte[0];
+    private int position = 0;
+    private int limit = 0;
+
+    private boolean inFrame = false;
+    private boolean linked;
+    private boolean blockChecksum;
+    private boolean contentChecksum;
+    private int maxBlockSize;
+
+    // *****************************************************************************************
+    // OverrideMethods, InputStream
+    // *****************************************************************************************
+
+    @Override
+    public int read() throws IOException {
+        if ((position == limit) && !fill()) {return -1;}
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (len == 0) {return 0;}
+        if ((position == limit) && !fill()) {return -1;}
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, buf, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    LZ4FrameInputStream(InputStream input) {
+        this.input = input;
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // @return false if the end of the stream is reached
+    private boolean fill() throws IOException {
+        while (true) {
+            if (!inFrame && !readFrameHeader()) {return false;}
+            int size = readIntLE();
+            if (size == 0) {
+                // end mark of the frame
+                if (contentChecksum) {input.skipNBytes(4);}
+                inFrame = false;
+                continue;
+            }
+            boolean compressed = (size & 0x80000000) == 0;
+            size &= 0x7FFFFFFF;
+            if (size > maxBlockSize) {
+                throw new IOException("Illegal size of lz4 block: " + size);
+            }
+            // the last bytes decompressed are kept as the history of the next block
+            int kept = linked ? Math.min(limit, WINDOW) : 0;
+            System.arraycopy(buffer, limit - kept, buffer, 0, kept);
+            position = limit = kept;
+            if (compressed) {
+                readFully(block, size);
+                limit = decompress(block, size, buffer, kept);
+            } else {
+                readFully(buffer, kept, size);
+                limit = kept + size;
+            }
+            if (blockChecksum) {input.skipNBytes(4);}
+            if (limit > position) {return true;}
+        }
+    }
+
+    // @return false if the end of the stream is reached (before the frame)
+    private boolean readFrameHeader() throws IOException {
+        while (true) {
+            int b = input.read();
+            if (b == -1) {return false;}
+            int magic = b | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+            if ((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC) {
+                input.skipNBytes(readIntLE() & 0xFFFFFFFFL);
+                continue;
+            }
+            if (magic != MAGIC) {
+                throw new IOException("Illegal magic of lz4 frame: " + Integer.toHexString(magic));
+            }
+            int flg = readByte(), bd = readByte();
+            int blockSizeId = (bd >> 4) & 0x7;
+            if (((flg >> 6) != 1) || (blockSizeId < 4)) {
+                throw new IOException("Unsupported lz4 frame descriptor");
+            }
+            linked = (flg & 0x20) == 0;
+            blockChecksum = (flg & 0x10) != 0;
+            contentChecksum = (flg & 0x04) != 0;
+            // content size(8), dictionary id(4), header checksum(1)
+            input.skipNBytes((((flg & 0x08) != 0) ? 8 : 0) + (((flg & 0x01) != 0) ? 4 : 0) + 1);
+            // 4: 64KB, 5: 256KB, 6: 1MB, 7: 4MB
+            maxBlockSize = 1 << (2 * blockSizeId + 8);
+            if (block.length < maxBlockSize) {
+                block = new byte[maxBlockSize];
+                byte[] newBuffer = new byte[WINDOW + maxBlockSize];
+                System.arraycopy(buffer, 0, newBuffer, 0, limit);
+                buffer = newBuffer;
+            }
+            // the history does not go across frames
+            position = limit = 0;
+            inFrame = true;
+            return true;
+        }
+    }
+
+    // Note: The sequences are: token, [literal length...], literals, offset, [match length...];
+    // The last sequence has literals only.
+    //
+    // @return the end of the decompressed bytes in the destination
+    private static int decompress(byte[] src, int srcLength, byte[] dst, int dstOffset)
+            throws IOException {
+        int s = 0, d = dstOffset;
+        try {
+            while (true) {
+                int token = src[s++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    for (int b = 255; b == 255; literals += b) {b = src[s++] & 0xFF;}
+                }
+                System.arraycopy(src, s, dst, d, literals);
+                s += literals;
+                d += literals;
+                if (s >= srcLength) {return d;}
+                int offset = (src[s] & 0xFF) | ((src[s + 1] & 0xFF) << 8);
+                s += 2;
+                if ((offset == 0) || (offset > d)) {
+                    throw new IOException("Illegal offset of lz4 match: " + offset);
+                }
+                int length = token & 0xF;
+                if (length == 15) {
+                    for (int b = 255; b == 255; length += b) {b = src[s++] & 0xFF;}
+                }
+                length += 4;
+                int m = d - offset;
+                if (offset >= length) {
+                    System.arraycopy(dst, m, dst, d, length);
+                } else {
+                    // overlapped, i.e. repeating the last `offset` bytes
+                    for (int i = 0; i < length; i++) {dst[d + i] = dst[m + i];}
+                }
+                d += length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt lz4 block", e);
+        }
+    }
+
+    private void readFully(byte[] buf, int length) throws IOException {
+        readFully(buf, 0, length);
+    }
+
+    private void readFully(byte[] buf, int off, int length) throws IOException {
+        if (input.readNBytes(buf, off, length) < length) {
+            throw new EOFException("Unexpected end of lz4 stream");
+        }
+    }
+
+    private int readByte() throws IOException {
+        int b = input.read();
+        if (b == -1) {throw new EOFException("Unexpected end of lz4 stream");}
+        return b;
+    }
+
+    private int readIntLE() throws IOException {
+        return readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl.minicap;
+
+import lombok.experimental.Accessors;
+import program.common.basic.resource.conf.Config;
+import program.common.basic.vision.Image;
+import program.common.smart.device._impl.ScreenCapture;
+import program.common.smart.device._impl.adb.impl.ADB;
+import program.common.smart.device._impl.minicap.impl.Minicap;
+
+/**
+ * {@link ScreenCapture} implementation based on minicap.
+ *
+ * <p>Frames are streamed by the device (20-60 fps) and decoded in the background, instead of a
+ * `screencap` process per screenshot, so a screenshot costs no more than the latest frame.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class MinicapScreenCapture implements ScreenCapture {
+
+    private final Minicap minicap;
+
+    // *****************************************************************************************
+    // OverrideMethods, ScreenCapture
+    // *****************************************************************************************
+
+    // Note: The areas are cropped from the latest frame (see default methods), which is decoded
+    // anyway.
+    @Override
+    public Image screenshot() {
+        return minicap.frame();
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public synchronized boolean closed() {
+        return minicap.closed();
+    }
+
+    @Override
+    public synchronized void close() {
+        minicap.close();
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    public MinicapScreenCapture(Config config) {
+        String adbdAddress = config.getValue("adbd.address");
+        int adbdConnectionTimeout = config.getValueAsInt("adbd.connection-timeout");
+        int minicapConnectionTimeout = config.getValueAsInt("minicap.connection-timeout");
+        int minicapQuality = Math.max(1, Math.min(config.getValueAsInt("minicap.quality"), 100));
+
+        ADB adb = ADB.of(this, adbdAddress, adbdConnectionTimeout);
+        minicap = Minicap.of(adb, this, minicapConnectionTimeout, minicapQuality);
+    }
+
+}
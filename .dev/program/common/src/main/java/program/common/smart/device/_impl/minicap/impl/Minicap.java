@@ -0,0 +1,353 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl.minicap.impl;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
+import program.common.basic.logger.Logger;
+import program.common.basic.resource.ResUtl;
+import program.common.basic.resource.SilentCloseable;
+import program.common.basic.task.Task;
+import program.common.basic.utility.WeakSet;
+import program.common.basic.vision.Image;
+import program.common.basic.vision.Resolution;
+import program.common.smart.device._impl.adb.impl.ADB;
+import program.common.smart.device._impl.adb.impl.ADBStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import static java.lang.String.format;
+
+/**
+ * Minicap, streaming the screen as jpeg frames (pushed by the device whenever it changes).
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class Minicap implements SilentCloseable {
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    private static final WeakSet<Minicap> REFERENCES = new WeakSet<>();
+
+    // @param [quality] jpeg quality, range: [1, 100]
+    public static Minicap of(ADB adb, Object adbHolder, int timeout, int quality) {
+        String taskName = format(
+                "Minicap#of(%s,<adbHolder>,%d,%d)", adb.socketAddress(), timeout, quality
+        );
+        return Task.basic(taskName, () -> {
+            return REFERENCES.add(
+                    ref -> ref.adb == adb,
+                    () -> new Minicap(adb, adbHolder, quality)
+            );
+        }).submit().waitUntilComplete(timeout);
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    // version(1) + size(1) + pid(4) + real width(4) + real height(4) + virtual width(4)
+    // + virtual height(4) + orientation(1) + quirks(1)
+    private static final int BANNER_SIZE = 24;
+
+    private final @Getter ADB adb;
+    private final Object adbHolder;
+    @SuppressWarnings({"FieldCanBeLocal", "unused"}) // strongly referenced by this instance
+    private final Object callbackBeforeADBClosing;
+
+    private final ADBStream serverStream;
+    private final ADBStream clientStream;
+    private final Thread receivingThread;
+    private final Thread decodingThread;
+
+    // notified on each frame received, decoded (or failed), and on closing
+    private final Object signal = new Object();
+    // Note: Only the latest frame received is decoded, the older ones not decoded yet are
+    // dropped, so that the decoding never falls behind the stream.
+    private byte[] pending;
+    // sequence numbers of the latest frame received and the latest one decoded
+    private long received = 0;
+    private long decoded = 0;
+    private Image latest;
+    private RuntimeException failure;
+
+    private volatile boolean closed = false;
+
+    // *****************************************************************************************
+    // Methods, getting frame
+    // *****************************************************************************************
+
+    // Note: The frames received before this method is called are waited to be decoded, so the
+    // result is the screen at the call (minicap sends no frame while the screen is unchanged),
+    // delayed by the encoding and the transport only.
+    public Image frame() {
+        synchronized (signal) {
+            long target = Math.max(received, 1);
+            // a failed stream no longer follows the screen, so the latest frame is not returned
+            while ((decoded < target) || (failure != null)) {
+                if (closed) {
+                    String message = "Minicap closed";
+                    throw new InvocationException(message)
+                            .with("adbd.address", adb.socketAddress());
+                }
+                if (failure != null) {
+                    throw new InvocationException(failure)
+                            .with("adbd.address", adb.socketAddress());
+                }
+                try {
+                    signal.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InvocationException(e);
+                }
+            }
+            return latest;
+        }
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public boolean closed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {return;}
+        closeBeforeADBClosing();
+        adb.release(adbHolder);
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    private Minicap(ADB adb, Object adbHolder, int quality) {
+        Logger.title(3, "[minicap] init");
+        Logger.attribute("adbd.address", adb.socketAddress());
+        this.adb = adb;
+        this.adbHolder = adbHolder;
+        this.serverStream = startMinicapServer(quality);
+        this.clientStream = connectMinicapServer();
+        readBanner();
+        this.receivingThread = new Thread(this::receive, "Minicap#receive");
+        this.decodingThread = new Thread(this::decode, "Minicap#decode");
+        receivingThread.setDaemon(true);
+        decodingThread.setDaemon(true);
+        receivingThread.start();
+        decodingThread.start();
+        this.callbackBeforeADBClosing = adb.callbackBeforeClosing(this::closeBeforeADBClosing);
+        Logger.info("minicap init okay");
+        Logger.emptyLine();
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // Note: Unlike minitouch, a running server is restarted, because its projection (the
+    // virtual size) is fixed when it starts, and the resolution may have been changed since.
+    private ADBStream startMinicapServer(int quality) {
+        if (!adb.shell("pidof -s minicap").isBlank()) {
+            Logger.info("stopping the running minicap server...");
+            adb.shell("pkill -f /data/local/tmp/minicap");
+        }
+        if (adb.shell("find /data/local/tmp -name minicap").isBlank()) {
+            Logger.info("minicap files not found under `/data/local/tmp`");
+            String cpuAbi = adb.getpropCpuAbi();
+            int sdkVersion = adb.getpropSdkVersion();
+            String suffix = sdkVersion >= 16 ? "" : "-nopie";
+            String binary = bundled("/.bin/minicap/%s/minicap%s", cpuAbi, suffix);
+            String library = bundled(
+                    "/.bin/minicap-shared/android-%d/%s/minicap.so", sdkVersion, cpuAbi
+            );
+            Logger.info("pushing %s ...", binary);
+            adb.push(binary, "/data/local/tmp/minicap", "0777");
+            Logger.info("pushing %s ...", library);
+            adb.push(library, "/data/local/tmp/minicap.so", "0644");
+        }
+        String command = "LD_LIBRARY_PATH=/data/local/tmp /data/local/tmp/minicap";
+        // {"width":<w>,"height":<h>,"rotation":<degrees>,...}, at the natural orientation
+        JSONObject info = JSON.parseObject(adb.shell(command + " -i"));
+        int width = info.getIntValue("width"), height = info.getIntValue("height");
+        int rotation = info.getIntValue("rotation");
+        // the virtual size is at the natural orientation as well, and the frames are rotated
+        // to the current one, i.e. at the resolution of the display
+        Resolution resolution = adb.wmSize();
+        boolean rotated = (rotation % 180 != 0);
+        int virtualWidth = rotated ? resolution.height() : resolution.width();
+        int virtualHeight = rotated ? resolution.width() : resolution.height();
+        String projection = format(
+                "%dx%d@%dx%d/%d", width, height, virtualWidth, virtualHeight, rotation
+        );
+        Logger.info("starting minicap server (%s, quality %d)...", projection, quality);
+        ADBStream stream = adb.open(format(
+                "shell:%s -P %s -Q %d -S\0", command, projection, quality
+        ));
+        stream.input().peek();
+        return stream;
+    }
+
+    private ADBStream connectMinicapServer() {
+        Logger.info("connecting minicap server...");
+        ADBStream stream;
+        do {
+            Task.sleep(200);
+            stream = adb.open("localabstract:minicap\0");
+        } while (stream.input().peek() == -1);
+        return stream;
+    }
+
+    private void readBanner() {
+        byte[] banner = clientStream.input().readNBytes(BANNER_SIZE);
+        if ((banner.length < 2) || ((banner[1] & 0xFF) < BANNER_SIZE)) {
+            String message = "Illegal banner of minicap";
+            throw new InvocationException(message)
+                    .with("adbd.address", adb.socketAddress())
+                    .with("banner_size", banner.length);
+        }
+        // the banner may be extended by later versions
+        clientStream.input().skipNBytes((banner[1] & 0xFF) - BANNER_SIZE);
+        Logger.attribute("minicap.version", banner[0]);
+        Logger.attribute("minicap.pid", readIntLE(banner, 2));
+        Logger.attribute("minicap.real_size", format(
+                "%dx%d", readIntLE(banner, 6), readIntLE(banner, 10)
+        ));
+        Logger.attribute("minicap.virtual_size", format(
+                "%dx%d", readIntLE(banner, 14), readIntLE(banner, 18)
+        ));
+        Logger.attribute("minicap.orientation", (banner[22] & 0xFF) * 90);
+    }
+
+    // Note: Frames are length-prefixed (4 bytes, little endian) jpeg images.
+    private void receive() {
+        ADBStream.Input input = clientStream.input();
+        try {
+            while (!closed) {
+                byte[] head = input.readNBytes(4);
+                if (head.length < 4) {break;}
+                int length = readIntLE(head, 0);
+                byte[] frame = input.readNBytes(length);
+                if (frame.length < length) {break;}
+                synchronized (signal) {
+                    pending = frame;
+                    received++;
+                    signal.notifyAll();
+                }
+            }
+            if (closed) {return;}
+            fail(new InvocationException("Minicap stream ended"));
+        } catch (RuntimeException e) {
+            if (!closed) {fail(e);}
+        }
+    }
+
+    private void decode() {
+        while (true) {
+            byte[] frame;
+            long sequence;
+            synchronized (signal) {
+                while (pending == null) {
+                    if (closed || (failure != null)) {return;}
+                    try {
+                        signal.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                frame = pending;
+                sequence = received;
+                pending = null;
+            }
+            try {
+                Image image = Image.read("SCREEN", new ByteArrayInputStream(frame));
+                synchronized (signal) {
+                    latest = image;
+                    decoded = sequence;
+                    signal.notifyAll();
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        Logger.warn("minicap failed: %s", e);
+        synchronized (signal) {
+            failure = e;
+            signal.notifyAll();
+        }
+    }
+
+    private synchronized void closeBeforeADBClosing() {
+        if (this.closed) {return;}
+        Logger.title(3, "[minicap] close");
+        Logger.attribute("adbd.address", adb.socketAddress());
+        Logger.info("closing minicap...");
+        synchronized (signal) {
+            this.closed = true;
+            signal.notifyAll();
+        }
+        this.clientStream.close();
+        this.serverStream.close();
+        try {
+            receivingThread.join();
+            decodingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        REFERENCES.remove(this);
+        Logger.info("minicap close okay");
+        Logger.emptyLine();
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    // Note: Checked before pushing, since a failed push leaves a partial file on the device,
+    // which would be found (and run) by the next start.
+    //
+    // @return the path of the bundled file (the prebuilt of DeviceFarmer/minicap)
+    private static String bundled(String path, Object... args) {
+        String local = ResUtl.home(path, args);
+        if (!new File(local).isFile()) {
+            String message = "Minicap prebuilt not found, the abi or sdk may be unsupported";
+            throw new InvocationException(message)
+                    .with("local_file_path", local);
+        }
+        return local;
+    }
+
+    private static int readIntLE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 3] & 0xFF) << 24);
+    }
+
+}
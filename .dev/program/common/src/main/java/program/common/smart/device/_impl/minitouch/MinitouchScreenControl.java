@@ -17,11 +17,17 @@
 package program.common.smart.device._impl.minitouch;
 
 import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
 import program.common.basic.resource.conf.Config;
-import program.common.basic.task.Task;
 import program.common.smart.device._impl.ScreenControl;
 import program.common.smart.device._impl.adb.impl.ADB;
 import program.common.smart.device._impl.minitouch.impl.Minitouch;
+import program.common.smart.device.model.Gesture;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * {@link ScreenControl} implementation based on minitouch.
@@ -33,26 +39,102 @@ import program.common.smart.device._impl.minitouch.impl.Minitouch;
 public final class MinitouchScreenControl implements ScreenControl {
 
     private final Minitouch minitouch;
+    private final Interpolation swipeInterpolation;
+    private final int swipeSteps;
 
     // *****************************************************************************************
     // OverrideMethods, ScreenControl
     // *****************************************************************************************
 
     @Override
-    public synchronized void tap(int x, int y) {
-        minitouch.d(0, x, y).c().u(0).c().send();
+    public synchronized CompletableFuture<Void> tap(int x, int y) {
+        return minitouch.d(0, x, y).c().u(0).c().send();
+    }
+
+    // Note: The duration is waited by minitouch on the device (command `w`).
+    @Override
+    public synchronized CompletableFuture<Void> press(int x, int y, int duration) {
+        return minitouch.d(0, x, y).c().w(duration).u(0).c().send();
     }
 
+    // Note: The swipe is a single batch of commands (down, interpolated moves, up) sent at once,
+    // instead of `input swipe`, whose process takes hundreds of ms to start on the device.
     @Override
-    public synchronized void press(int x, int y, int duration) {
-        minitouch.d(0, x, y).c().w(duration).u(0).c().send();
-        Task.sleep(duration);
+    public synchronized CompletableFuture<Void> swipe(
+            int x1, int y1, int x2, int y2, int duration) {
+        int steps = Math.max(1, Math.min(swipeSteps, duration));
+        minitouch.d(0, x1, y1).c();
+        for (int i = 1; i <= steps; i++) {
+            double progress = swipeInterpolation.apply((double) i / steps);
+            int x = x1 + (int) Math.round((x2 - x1) * progress);
+            int y = y1 + (int) Math.round((y2 - y1) * progress);
+            // the waits add up to the duration exactly
+            int wait = duration * i / steps - duration * (i - 1) / steps;
+            if (wait > 0) {minitouch.w(wait);}
+            minitouch.m(0, x, y).c();
+        }
+        return minitouch.u(0).c().send();
     }
 
+    // Note: The gesture is compiled into a single batch: the keyframes of all strokes are sorted
+    // by time, the commands at the same time are committed together (unless of the same
+    // contact), and the gaps between the times are waited by minitouch (command `w`).
     @Override
-    public synchronized void swipe(int x1, int y1, int x2, int y2, int duration) {
-        // TODO swipe by minitouch commands
-        minitouch.adb().swipe(x1, y1, x2, y2, duration);
+    public synchronized CompletableFuture<Void> perform(Gesture gesture) {
+        if (gesture.contacts() > minitouch.maxContacts()) {
+            String message = "Too many contacts of gesture for minitouch";
+            throw new InvocationException(message)
+                    .with("gesture", gesture)
+                    .with("max_contacts", minitouch.maxContacts());
+        }
+        List<Gesture.Stroke> strokes = gesture.strokes();
+        // keyframe: time, index of the stroke, index of the keyframe in the stroke
+        List<int[]> keyframes = new ArrayList<>();
+        for (int s = 0; s < strokes.size(); s++) {
+            for (int k = 0, n = strokes.get(s).size(); k < n; k++) {
+                keyframes.add(new int[]{strokes.get(s).time(k), s, k});
+            }
+        }
+        // stable, so the keyframes of a stroke at the same time keep their order
+        keyframes.sort(Comparator.comparingInt(keyframe -> keyframe[0]));
+        int time = 0;
+        // contacts with uncommitted commands, bit by bit
+        long uncommitted = 0;
+        for (int[] keyframe : keyframes) {
+            Gesture.Stroke stroke = strokes.get(keyframe[1]);
+            int k = keyframe[2], contact = stroke.contact(), x = stroke.x(k), y = stroke.y(k);
+            long bit = 1L << contact;
+            if (keyframe[0] > time) {
+                if (uncommitted != 0) {minitouch.c();}
+                uncommitted = 0;
+                minitouch.w(keyframe[0] - time);
+                time = keyframe[0];
+            }
+            if (k == 0) {
+                if ((uncommitted & bit) != 0) {
+                    minitouch.c();
+                    uncommitted = 0;
+                }
+                minitouch.d(contact, x, y);
+                uncommitted |= bit;
+            } else if ((x != stroke.x(k - 1)) || (y != stroke.y(k - 1))) {
+                if ((uncommitted & bit) != 0) {
+                    minitouch.c();
+                    uncommitted = 0;
+                }
+                minitouch.m(contact, x, y);
+                uncommitted |= bit;
+            }
+            if (k == stroke.size() - 1) {
+                if ((uncommitted & bit) != 0) {
+                    minitouch.c();
+                    uncommitted = 0;
+                }
+                minitouch.u(contact);
+                uncommitted |= bit;
+            }
+        }
+        return minitouch.c().send();
     }
 
     // *****************************************************************************************
@@ -77,9 +159,33 @@ public final class MinitouchScreenControl implements ScreenControl {
         String adbdAddress = config.getValue("adbd.address");
         int adbdConnectionTimeout = config.getValueAsInt("adbd.connection-timeout");
         int minitouchConnectionTimeout = config.getValueAsInt("minitouch.connection-timeout");
+        swipeInterpolation = config.getValueAsEnum(
+                "minitouch.swipe.interpolation", Interpolation.class
+        );
+        swipeSteps = Math.max(1, config.getValueAsInt("minitouch.swipe.steps"));
 
         ADB adb = ADB.of(this, adbdAddress, adbdConnectionTimeout);
         minitouch = Minitouch.of(adb, this, minitouchConnectionTimeout);
     }
 
+    // *****************************************************************************************
+    // Enums
+    // *****************************************************************************************
+
+    // how the contact moves from the start to the end of a swipe
+    public enum Interpolation {
+
+        // at constant speed
+        linear,
+        // slow at both ends (smoothstep), so that the swipe barely flings
+        eased;
+
+        // @param [t] elapsed ratio of the duration, range: [0.0, 1.0]
+        // @return moved ratio of the distance, range: [0.0, 1.0]
+        public double apply(double t) {
+            return (this == linear) ? t : (t * t * (3 - 2 * t));
+        }
+
+    }
+
 }
@@ -24,12 +24,12 @@ import program.common.basic.resource.SilentCloseable;
 import program.common.basic.task.Task;
 import program.common.basic.utility.StrUtl;
 import program.common.basic.utility.WeakSet;
-import program.common.basic.vision.Area;
-import program.common.smart.device._impl.ScreenCapture;
+import program.common.basic.vision.Resolution;
 import program.common.smart.device._impl.adb.impl.ADB;
 import program.common.smart.device._impl.adb.impl.ADBStream;
 
 import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.String.format;
 
@@ -69,12 +69,15 @@ public final class Minitouch implements SilentCloseable {
     private final ADBStream serverStream;
     private final ADBStream clientStream;
 
+    private final @Getter int maxContacts;
     private final double xScaling;
     private final double yScaling;
     private final String pressure;
 
     private final CommandsBuffer commands = new CommandsBuffer();
     private int waitDuration = 0;
+    // System.nanoTime() when minitouch finishes the waits of the commands sent
+    private long busyUntil = System.nanoTime();
 
     private boolean closed = false;
 
@@ -84,8 +87,8 @@ public final class Minitouch implements SilentCloseable {
 
     public synchronized Minitouch d(int contact, int x, int y) {
         String contactStr = StrUtl.decimal(contact);
-        String xStr = StrUtl.decimal(x);
-        String yStr = StrUtl.decimal(y);
+        String xStr = StrUtl.decimal((int) (x * xScaling));
+        String yStr = StrUtl.decimal((int) (y * yScaling));
         // d <contact> <x> <y> <pressure>\n
         int n = 6 + contactStr.length() + xStr.length() + yStr.length() + pressure.length();
         commands.ensureCapacity(n)
@@ -109,7 +112,7 @@ public final class Minitouch implements SilentCloseable {
         String xStr = StrUtl.decimal((int) (x * xScaling));
         String yStr = StrUtl.decimal((int) (y * yScaling));
         // m <contact> <x> <y> <pressure>\n
-        int n = 6 + contactStr.length() + xStr.length() + yStr.length();
+        int n = 6 + contactStr.length() + xStr.length() + yStr.length() + pressure.length();
         commands.ensureCapacity(n)
                 .writeAscii("m ").writeAscii(contactStr).writeChar(' ').writeAscii(xStr)
                 .writeChar(' ').writeAscii(yStr).writeChar(' ').writeAscii(pressure)
@@ -138,12 +141,17 @@ public final class Minitouch implements SilentCloseable {
     // Methods, sending commands
     // *****************************************************************************************
 
-    public synchronized Minitouch send() {
+    // Note: The commands are flushed without waiting for their waits (command `w`), which are
+    // done by minitouch on the device; Commands sent meanwhile are queued after them there.
+    //
+    // @return a future completed when minitouch is expected to have finished the commands
+    public synchronized CompletableFuture<Void> send() {
         clientStream.output().setBuffer(commands.getBuffer()).setOffset(commands.size()).flush();
-        Task.sleep(waitDuration);
+        long now = System.nanoTime();
+        busyUntil = Math.max(busyUntil, now) + waitDuration * 1_000_000L;
         commands.reset();
         waitDuration = 0;
-        return this;
+        return Task.delay((int) ((busyUntil - now + 999_999) / 1_000_000));
     }
 
     // *****************************************************************************************
@@ -173,11 +181,13 @@ public final class Minitouch implements SilentCloseable {
         this.adbHolder = adbHolder;
         this.serverStream = startMinitouchServerIfNeeded();
         this.clientStream = connectMinitouchServer();
-        Area screenArea = ScreenCapture.SCREEN_AREA;
+        // the coordinates given are at the resolution of the display
+        Resolution resolution = adb.wmSize();
         // line: ^ <max-contacts> <max-x> <max-y> <max-pressure>
         String[] args = clientStream.input().readLine().split(" ");
-        this.xScaling = (Double.parseDouble(args[2]) + 1) / screenArea.width();
-        this.yScaling = (Double.parseDouble(args[3]) + 1) / screenArea.height();
+        this.maxContacts = Integer.parseInt(args[1]);
+        this.xScaling = (Double.parseDouble(args[2]) + 1) / resolution.width();
+        this.yScaling = (Double.parseDouble(args[3]) + 1) / resolution.height();
         this.pressure = StrUtl.decimal((int) Math.max(Double.parseDouble(args[4]) * 0.75, 1));
         clientStream.input().readLine(); // line: $ <pid>
         this.callbackBeforeADBClosing = adb.callbackBeforeClosing(this::closeBeforeADBClosing);
@@ -244,7 +254,8 @@ public final class Minitouch implements SilentCloseable {
         CommandsBuffer ensureCapacity(int lengthToWrite) {
             int limit = buf.length - count;
             if (lengthToWrite > limit) {
-                byte[] newBuf = new byte[count + lengthToWrite];
+                // doubled, because a batch (such as a swipe) is written command by command
+                byte[] newBuf = new byte[Math.max(count + lengthToWrite, buf.length * 2)];
                 System.arraycopy(buf, 0, newBuf, 0, count);
                 buf = newBuf;
             }
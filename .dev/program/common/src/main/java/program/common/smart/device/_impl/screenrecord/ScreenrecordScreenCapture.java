@@ -0,0 +1,91 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl.screenrecord;
+
+import lombok.experimental.Accessors;
+import program.common.basic.resource.conf.Config;
+import program.common.basic.vision.Image;
+import program.common.basic.vision.Resolution;
+import program.common.smart.device._impl.ScreenCapture;
+import program.common.smart.device._impl.adb.impl.ADB;
+import program.common.smart.device._impl.screenrecord.impl.H264Decoder;
+import program.common.smart.device._impl.screenrecord.impl.Screenrecord;
+
+/**
+ * {@link ScreenCapture} implementation based on screenrecord.
+ *
+ * <p>The screen is streamed as h264 by the hardware encoder of the device, which costs much
+ * less cpu of the device than a `screencap` per frame, and is decoded by ffmpeg on the host.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class ScreenrecordScreenCapture implements ScreenCapture {
+
+    private final ADB adb;
+    private final Screenrecord screenrecord;
+
+    // *****************************************************************************************
+    // OverrideMethods, ScreenCapture
+    // *****************************************************************************************
+
+    @Override
+    public Image screenshot() {
+        return screenrecord.frame();
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public synchronized boolean closed() {
+        return screenrecord.closed();
+    }
+
+    @Override
+    public synchronized void close() {
+        screenrecord.close();
+        adb.release(this);
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    public ScreenrecordScreenCapture(Config config) {
+        String adbdAddress = config.getValue("adbd.address");
+        int adbdConnectionTimeout = config.getValueAsInt("adbd.connection-timeout");
+        int screenrecordBitRate = config.getValueAsInt("screenrecord.bit-rate");
+        H264Decoder.DecodeMode screenrecordDecode = config.getValueAsEnum(
+                "screenrecord.decode", H264Decoder.DecodeMode.class
+        );
+        int screenrecordDecodeNth = Math.max(1, config.getValueAsInt("screenrecord.decode.nth"));
+        String screenrecordFFmpeg = config.getValue("screenrecord.ffmpeg");
+
+        adb = ADB.of(this, adbdAddress, adbdConnectionTimeout);
+        // the resolution has been applied by the device (see `capture.resolution`)
+        Resolution resolution = adb.wmSize();
+        H264Decoder decoder = new H264Decoder(
+                screenrecordFFmpeg, resolution.width(), resolution.height(),
+                screenrecordDecode, screenrecordDecodeNth
+        );
+        screenrecord = new Screenrecord(adb, resolution, screenrecordBitRate, decoder);
+    }
+
+}
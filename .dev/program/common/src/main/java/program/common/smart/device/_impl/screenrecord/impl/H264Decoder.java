@@ -0,0 +1,317 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl.screenrecord.impl;
+
+import program.common.basic.exception.InvocationException;
+import program.common.basic.logger.Logger;
+import program.common.basic.resource.SilentCloseable;
+import program.common.basic.vision.Image;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * H.264 decoder, decoding an annex-b stream into frames by an ffmpeg process.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class H264Decoder implements SilentCloseable {
+
+    // max duration (ms) to wait for the frames expected, after which the ones missing are taken
+    // as dropped by ffmpeg (such as corrupt ones), see `frame()`
+    private static final int MAX_WAIT = 1000;
+
+    private final int width;
+    private final int height;
+    private final DecodeMode mode;
+    private final int nth;
+    private final Process process;
+    private final OutputStream input;
+    private final Thread decodingThread;
+
+    // notified on each frame decoded (or failure), and on closing
+    private final Object signal = new Object();
+    // numbers of the frames (and keyframes) started in the stream written, see `FrameCounter`
+    private long received = 0;
+    private long receivedKeyframes = 0;
+    private boolean lastKeyframe = false;
+    // number of the frames output by ffmpeg, and the ones expected but never output
+    private long decoded = 0;
+    private long dropped = 0;
+    private Image latest;
+    private RuntimeException failure;
+
+    private volatile boolean closed = false;
+
+    // *****************************************************************************************
+    // Methods, decoding stream
+    // *****************************************************************************************
+
+    // Note: The stream written is decoded as it arrives; Concatenated streams (each starting
+    // with its own parameter sets) are decoded as one.
+    public OutputStream input() {
+        return input;
+    }
+
+    // Note: The frames complete in the stream written before this method is called are waited to
+    // be decoded (as `Minicap.frame()` does), so the result is not older than the stream at the
+    // call; Waits for the first frame if none yet.
+    //
+    // Note: The staleness is limited to the last frame started in the stream, which ffmpeg does
+    // not output until the next one starts (it cannot tell the end of a frame before); Since
+    // screenrecord sends no frame while the screen is unchanged (and has no request to repeat
+    // one), that frame is not waited for, which would block until the screen changes.
+    //
+    // Note: Frames expected but not decoded within `MAX_WAIT` are taken as dropped, so that the
+    // counts are resynchronized rather than waited for forever.
+    public Image frame() {
+        synchronized (signal) {
+            long target = expectedOutputs() - dropped;
+            long deadline = System.nanoTime() + MAX_WAIT * 1_000_000L;
+            // a failed stream no longer follows the screen, so the latest frame is not returned
+            while ((latest == null) || (decoded < target) || (failure != null)) {
+                if (closed) {
+                    String message = "H264 decoder closed";
+                    throw new InvocationException(message);
+                }
+                if (failure != null) {
+                    throw new InvocationException(failure);
+                }
+                long remaining = (deadline - System.nanoTime()) / 1_000_000L;
+                if ((latest != null) && (remaining <= 0)) {
+                    Logger.warn("h264 decoder resynchronized, %d frames dropped", target - decoded);
+                    dropped += target - decoded;
+                    break;
+                }
+                try {
+                    signal.wait((latest == null) ? 0 : Math.max(remaining, 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InvocationException(e);
+                }
+            }
+            return latest;
+        }
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public boolean closed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        synchronized (signal) {
+            if (closed) {return;}
+            closed = true;
+            signal.notifyAll();
+        }
+        process.destroy();
+        try {
+            decodingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    // @param [ffmpeg] path of the ffmpeg executable
+    // @param [width] width of the frames (the stream is scaled to it if different)
+    // @param [height] height of the frames (the stream is scaled to it if different)
+    // @param [nth] decode every nth frame only, for `DecodeMode.nth`
+    public H264Decoder(String ffmpeg, int width, int height, DecodeMode mode, int nth) {
+        this.width = width;
+        this.height = height;
+        this.mode = mode;
+        this.nth = nth;
+        List<String> command = new ArrayList<>(List.of(
+                ffmpeg, "-hide_banner", "-loglevel", "error",
+                "-fflags", "nobuffer", "-flags", "low_delay", "-probesize", "32"
+        ));
+        if (mode == DecodeMode.keyframes) {
+            // the other frames are skipped before decoding, which saves most of the cpu
+            command.addAll(List.of("-skip_frame", "nokey"));
+        }
+        command.addAll(List.of("-f", "h264", "-i", "pipe:0"));
+        String scale = format("scale=%d:%d", width, height);
+        if (mode == DecodeMode.nth) {
+            command.addAll(List.of("-vf", format("select=not(mod(n\\,%d)),%s", nth, scale)));
+        } else {
+            command.addAll(List.of("-vf", scale));
+        }
+        // frames are passed through as decoded, neither duplicated nor dropped for a frame rate
+        command.addAll(List.of(
+                "-vsync", "0", "-f", "rawvideo", "-pix_fmt", "rgb24", "pipe:1"
+        ));
+        try {
+            this.process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            throw new InvocationException(e)
+                    .with("ffmpeg", ffmpeg);
+        }
+        this.input = new FrameCounter(process.getOutputStream());
+        this.decodingThread = new Thread(this::decode, "H264Decoder#decode");
+        decodingThread.setDaemon(true);
+        decodingThread.start();
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // @return the number of the frames ffmpeg outputs for the frames complete in the stream (all
+    // but the last one started), depending on the decode mode
+    private long expectedOutputs() {
+        long complete = Math.max(received - 1, 0);
+        return switch (mode) {
+            case all -> complete;
+            case keyframes -> receivedKeyframes - (lastKeyframe ? 1 : 0);
+            // frames 0, n, 2n, ... (zero-based) are selected
+            case nth -> (complete + nth - 1) / nth;
+        };
+    }
+
+    // Note: Frames are read as packed rgb24, and converted into the raster of the image.
+    private void decode() {
+        int size = width * height;
+        byte[] buffer = new byte[size * 3];
+        try (InputStream output = process.getInputStream()) {
+            while (output.readNBytes(buffer, 0, buffer.length) == buffer.length) {
+                int[] rgbs = new int[size];
+                for (int i = 0, p = 0; i < size; i++, p += 3) {
+                    rgbs[i] = ((buffer[p] & 0xFF) << 16) | ((buffer[p + 1] & 0xFF) << 8)
+                            | (buffer[p + 2] & 0xFF);
+                }
+                Image image = Image.of("SCREEN", width, height, rgbs);
+                synchronized (signal) {
+                    latest = image;
+                    decoded++;
+                    signal.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {fail(new InvocationException(e));}
+            return;
+        }
+        if (closed) {return;}
+        // the output is closed when ffmpeg exits, such as on a corrupt stream
+        Integer exitValue = null;
+        try {
+            if (process.waitFor(1, TimeUnit.SECONDS)) {exitValue = process.exitValue();}
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String message = "FFmpeg exited";
+        fail(new InvocationException(message)
+                .with("exit_value", exitValue));
+    }
+
+    private void fail(RuntimeException e) {
+        Logger.warn("h264 decoder failed: %s", e);
+        synchronized (signal) {
+            failure = e;
+            signal.notifyAll();
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalClasses
+    // *****************************************************************************************
+
+    // Note: Counts the frames started in the annex-b stream passing through, a frame starting at
+    // each slice (nal type 1, or 5 for keyframes) whose `first_mb_in_slice` is 0, i.e. whose
+    // first bit after the nal header is 1 (exp-golomb); Start codes never occur inside nal units
+    // (emulation prevention), so no other parsing is needed.
+    private final class FrameCounter extends FilterOutputStream {
+
+        // consecutive zero bytes before the current one
+        private int zeros = 0;
+        // 0: none; -1: nal header expected; 1 or 5: slice header of the nal type expected
+        private int expecting = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            scan(b & 0xFF);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (int i = offset, l = offset + length; i < l; i++) {
+                scan(bytes[i] & 0xFF);
+            }
+            out.write(bytes, offset, length);
+        }
+
+        FrameCounter(OutputStream out) {
+            super(out);
+        }
+
+        private void scan(int b) {
+            if (expecting == -1) {
+                int type = b & 0x1F;
+                expecting = ((type == 1) || (type == 5)) ? type : 0;
+            } else if (expecting != 0) {
+                if ((b & 0x80) != 0) {
+                    synchronized (signal) {
+                        received++;
+                        lastKeyframe = (expecting == 5);
+                        if (lastKeyframe) {receivedKeyframes++;}
+                    }
+                }
+                expecting = 0;
+            } else if ((b == 1) && (zeros >= 2)) {
+                expecting = -1;
+            }
+            zeros = (b == 0) ? (zeros + 1) : 0;
+        }
+
+    }
+
+    // *****************************************************************************************
+    // Enums
+    // *****************************************************************************************
+
+    public enum DecodeMode {
+
+        // every frame
+        all,
+        // keyframes only (the screenrecord encoder emits one every several seconds)
+        keyframes,
+        // every nth frame
+        nth,
+
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device._impl.screenrecord.impl;
+
+import program.common.basic.logger.Logger;
+import program.common.basic.resource.SilentCloseable;
+import program.common.basic.vision.Image;
+import program.common.basic.vision.Resolution;
+import program.common.smart.device._impl.adb.impl.ADB;
+import program.common.smart.device._impl.adb.impl.ADBStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.lang.String.format;
+
+/**
+ * Screenrecord, streaming the screen as h264 (`screenrecord --output-format=h264 -`) over a
+ * single adb stream into a {@link H264Decoder}.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class Screenrecord implements SilentCloseable {
+
+    // Note: Screenrecord stops at its time limit (3 minutes), and is restarted then; A stream
+    // ending sooner than this is regarded as a failure, instead of being restarted in a loop.
+    private static final long MIN_STREAM_NANOS = 10_000_000_000L;
+
+    private final ADB adb;
+    private final String destination;
+    private final H264Decoder decoder;
+    private final Thread pumpingThread;
+
+    private ADBStream stream;
+    private volatile boolean closed = false;
+
+    // *****************************************************************************************
+    // Methods, getting frame
+    // *****************************************************************************************
+
+    // Note: The encoder emits frames only when the screen changes, so the latest frame decoded
+    // is the current screen, delayed by the encoding and the decoding (about one frame each).
+    public Image frame() {
+        return decoder.frame();
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public boolean closed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {return;}
+            closed = true;
+            if (stream != null) {stream.close();}
+        }
+        try {
+            pumpingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        decoder.close();
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    // @param [resolution] resolution of the display, i.e. the size of the frames
+    // @param [bitRate] bit rate (bit/s) of the encoder
+    public Screenrecord(ADB adb, Resolution resolution, int bitRate, H264Decoder decoder) {
+        this.adb = adb;
+        // exec:<command>\0 (raw bytes, no need to fix line separator)
+        this.destination = format(
+                "exec:screenrecord --output-format=h264 --size %dx%d --bit-rate %d -\0",
+                resolution.width(), resolution.height(), bitRate
+        );
+        this.decoder = decoder;
+        this.pumpingThread = new Thread(this::pump, "Screenrecord#pump");
+        pumpingThread.setDaemon(true);
+        pumpingThread.start();
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // Note: Once the pumping fails, the input of the decoder is closed, which fails the decoder
+    // as well, so that callers waiting for a frame are not blocked forever.
+    private void pump() {
+        OutputStream input = decoder.input();
+        try {
+            while (true) {
+                ADBStream stream;
+                synchronized (this) {
+                    if (closed) {return;}
+                    this.stream = stream = adb.open(destination);
+                }
+                long start = System.nanoTime();
+                stream.input().transferTo(input);
+                input.flush();
+                stream.close();
+                if (closed) {return;}
+                if (System.nanoTime() - start < MIN_STREAM_NANOS) {
+                    Logger.warn("screenrecord stream ended unexpectedly @ %s", adb.socketAddress());
+                    break;
+                }
+                Logger.info("screenrecord restarted (time limit reached)");
+            }
+        } catch (IOException | RuntimeException e) {
+            if (closed) {return;}
+            Logger.warn("screenrecord failed: %s", e);
+        }
+        try {
+            input.close();
+        } catch (IOException e) {
+            Logger.warn("failed to close input of h264 decoder: %s", e);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.vision.Area;
+
+/**
+ * Await policy, how `SmartDevice.await(...)` polls frames and retries taps.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Builder
+@Accessors(fluent = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class AwaitPolicy {
+
+    // max duration (ms) of the await, 0 to wait until the condition is met
+    private @Builder.Default @Getter int timeout = 10000;
+
+    // interval (ms) between frames evaluated, reset to the base one after each tap:
+    // interval = Math.min( baseInterval * multiplier ^ n, maxInterval )
+
+    private @Builder.Default @Getter int baseInterval = 50;
+    private @Builder.Default @Getter double multiplier = 1.5;
+    private @Builder.Default @Getter int maxInterval = 500;
+
+    // area to tap until the condition is met, or null not to tap
+    private @Builder.Default @Getter Area tap = null;
+    // min interval (ms) between taps, i.e. how long a tap is given to take effect
+    private @Builder.Default @Getter int tapInterval = 1000;
+    // max number of taps, 0 for no limit
+    private @Builder.Default @Getter int maxTaps = 0;
+
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device.model;
+
+import program.common.basic.vision.Area;
+import program.common.basic.vision.Image;
+import program.common.basic.vision.ImageInArea;
+import program.common.basic.vision.Resolution;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Condition of the screen, evaluated against each frame by `SmartDevice.await(...)`.
+ *
+ * <p>Areas and templates given to the factories are at the base resolution, and are scaled to
+ * the resolution of the frame internally.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@FunctionalInterface
+public interface Condition {
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    static Condition appeared(ImageInArea target) {
+        return (screenshot, resolution) -> {
+            ImageInArea scaled = resolution.scale(target);
+            return screenshot.match(scaled.area(), scaled.image(), resolution.matchTolerance());
+        };
+    }
+
+    static Condition disappeared(ImageInArea target) {
+        return appeared(target).negate();
+    }
+
+    // Note: The condition is stateful, the first frame evaluated is the baseline; Create one for
+    // each await.
+    //
+    // @return a condition met once the area differs from the first frame evaluated
+    static Condition changed(Area area) {
+        Long[] baseline = {null};
+        return (screenshot, resolution) -> {
+            long hash = screenshot.hash(resolution.scale(area));
+            if (baseline[0] == null) {
+                baseline[0] = hash;
+                return false;
+            }
+            return hash != baseline[0];
+        };
+    }
+
+    // Note: The condition is stateful, see `changed(Area)`.
+    //
+    // @param [frames] number of frames in a row the area must be identical in (at least 2)
+    // @return a condition met once the area stops changing, such as after an animation
+    static Condition settled(Area area, int frames) {
+        long[] state = {0, 0};
+        return (screenshot, resolution) -> {
+            long hash = screenshot.hash(resolution.scale(area));
+            // state: [0] hash of the previous frame, [1] number of identical frames in a row
+            state[1] = ((state[1] > 0) && (hash == state[0])) ? (state[1] + 1) : 1;
+            state[0] = hash;
+            return state[1] >= frames;
+        };
+    }
+
+    // @param [predicate] predicate of the area cropped from the frame (at its resolution)
+    static Condition image(Area area, Predicate<Image> predicate) {
+        return (screenshot, resolution) -> predicate.test(
+                screenshot.crop(resolution.scale(area))
+        );
+    }
+
+    // Note: The reader is given the whole frame, such as `image -> ocr.textarea(image, profile)`
+    // with the profile scaled to the resolution of the device.
+    //
+    // @return a condition met once the text read from the frame contains the pattern
+    static Condition text(Function<Image, ? extends CharSequence> reader, Pattern pattern) {
+        return (screenshot, resolution) -> pattern.matcher(reader.apply(screenshot)).find();
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    // @param [screenshot] the whole frame at the given resolution
+    boolean test(Image screenshot, Resolution resolution);
+
+    // *****************************************************************************************
+    // Methods, combining condition
+    // *****************************************************************************************
+
+    default Condition negate() {
+        return (screenshot, resolution) -> !test(screenshot, resolution);
+    }
+
+    // Note: Short-circuiting, so a stateful condition given may miss frames.
+    default Condition and(Condition that) {
+        return (screenshot, resolution) -> test(screenshot, resolution)
+                && that.test(screenshot, resolution);
+    }
+
+    // Note: Short-circuiting, so a stateful condition given may miss frames.
+    default Condition or(Condition that) {
+        return (screenshot, resolution) -> test(screenshot, resolution)
+                || that.test(screenshot, resolution);
+    }
+
+}
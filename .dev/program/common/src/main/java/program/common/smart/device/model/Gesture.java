@@ -0,0 +1,258 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.device.model;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
+import program.common.basic.vision.Resolution;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Gesture, strokes of one or more contacts on a timeline, performed as a whole.
+ *
+ * <p>Such as multi-finger taps, chorded presses, or several taps in a row, which are sent to the
+ * device at once (instead of one round trip per action).
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class Gesture {
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    // sorted by the down time
+    private final @Getter List<Stroke> strokes;
+    // max number of contacts down at the same time
+    private final @Getter int contacts;
+
+    // *****************************************************************************************
+    // Methods, getting metadata
+    // *****************************************************************************************
+
+    // @return the up time of the last stroke (ms)
+    public int duration() {
+        int result = 0;
+        for (Stroke stroke : strokes) {
+            result = Math.max(result, stroke.upTime());
+        }
+        return result;
+    }
+
+    // *****************************************************************************************
+    // Methods, scaling gesture
+    // *****************************************************************************************
+
+    // @return this gesture with the coordinates (at the base resolution) scaled to the given one
+    public Gesture scale(Resolution resolution) {
+        if (resolution.isBase()) {return this;}
+        List<Stroke> scaled = new ArrayList<>(strokes.size());
+        for (Stroke stroke : strokes) {
+            int n = stroke.size();
+            int[] xs = new int[n], ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = resolution.x(stroke.xs[i]);
+                ys[i] = resolution.y(stroke.ys[i]);
+            }
+            scaled.add(new Stroke(stroke.contact, stroke.times, xs, ys));
+        }
+        return new Gesture(List.copyOf(scaled), contacts);
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, Object
+    // *****************************************************************************************
+
+    @Override
+    public String toString() {
+        return format("%d strokes, %d contacts, %dms", strokes.size(), contacts, duration());
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    private Gesture(List<Stroke> strokes, int contacts) {
+        this.strokes = strokes;
+        this.contacts = contacts;
+    }
+
+    // *****************************************************************************************
+    // StaticClasses
+    // *****************************************************************************************
+
+    // Note: A stroke is a contact going down at the first keyframe, moving through the others,
+    // and going up at the last one (a single keyframe is a tap).
+    @Accessors(fluent = true)
+    public static final class Stroke {
+
+        // index of the contact, assigned by the builder
+        private final @Getter int contact;
+        // keyframes: time (ms since the gesture starts), x, y
+        private final int[] times;
+        private final int[] xs;
+        private final int[] ys;
+
+        // *********************************************************************************
+        // Methods, getting keyframe
+        // *********************************************************************************
+
+        public int size() {
+            return times.length;
+        }
+
+        public int time(int index) {
+            return times[index];
+        }
+
+        public int x(int index) {
+            return xs[index];
+        }
+
+        public int y(int index) {
+            return ys[index];
+        }
+
+        public int downTime() {
+            return times[0];
+        }
+
+        public int upTime() {
+            return times[times.length - 1];
+        }
+
+        // *********************************************************************************
+        // InternalConstructors
+        // *********************************************************************************
+
+        private Stroke(int contact, int[] times, int[] xs, int[] ys) {
+            this.contact = contact;
+            this.times = times;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+    }
+
+    public static final class Builder {
+
+        private final List<Stroke> strokes = new ArrayList<>(4);
+
+        // *********************************************************************************
+        // Methods, adding stroke
+        // *********************************************************************************
+
+        // @param [keyframes] (time, x, y) of each keyframe, with times not decreasing
+        public Builder stroke(int... keyframes) {
+            if ((keyframes.length == 0) || (keyframes.length % 3 != 0)) {
+                String message = "Keyframes of stroke must be (time, x, y) triples";
+                throw new InvocationException(message)
+                        .with("keyframes_length", keyframes.length);
+            }
+            int n = keyframes.length / 3;
+            int[] times = new int[n], xs = new int[n], ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                times[i] = keyframes[i * 3];
+                xs[i] = keyframes[i * 3 + 1];
+                ys[i] = keyframes[i * 3 + 2];
+                if ((times[i] < 0) || ((i > 0) && (times[i] < times[i - 1]))) {
+                    String message = "Illegal time of keyframe";
+                    throw new InvocationException(message)
+                            .with("index", i)
+                            .with("time", times[i]);
+                }
+            }
+            strokes.add(new Stroke(-1, times, xs, ys));
+            return this;
+        }
+
+        public Builder tap(int time, int x, int y) {
+            return stroke(time, x, y);
+        }
+
+        public Builder press(int time, int x, int y, int duration) {
+            return stroke(time, x, y, time + duration, x, y);
+        }
+
+        // Note: The contact moves at constant speed, in the given number of steps.
+        public Builder swipe(int time, int x1, int y1, int x2, int y2, int duration, int steps) {
+            steps = Math.max(1, steps);
+            int[] keyframes = new int[(steps + 1) * 3];
+            for (int i = 0; i <= steps; i++) {
+                keyframes[i * 3] = time + duration * i / steps;
+                keyframes[i * 3 + 1] = x1 + (x2 - x1) * i / steps;
+                keyframes[i * 3 + 2] = y1 + (y2 - y1) * i / steps;
+            }
+            return stroke(keyframes);
+        }
+
+        // *********************************************************************************
+        // Methods, building gesture
+        // *********************************************************************************
+
+        // Note: Each stroke takes the lowest contact which is up before the stroke goes down,
+        // so that sequential strokes share a contact and concurrent ones do not.
+        public Gesture build() {
+            if (strokes.isEmpty()) {
+                String message = "Gesture without stroke";
+                throw new InvocationException(message);
+            }
+            List<Stroke> sorted = new ArrayList<>(strokes);
+            sorted.sort(Comparator.comparingInt(Stroke::downTime));
+            // up time of the last stroke of each contact
+            List<Integer> upTimes = new ArrayList<>(2);
+            List<Stroke> result = new ArrayList<>(sorted.size());
+            for (Stroke stroke : sorted) {
+                int contact = 0;
+                while ((contact < upTimes.size()) && (upTimes.get(contact) >= stroke.downTime())) {
+                    contact++;
+                }
+                if (contact == upTimes.size()) {
+                    upTimes.add(stroke.upTime());
+                } else {
+                    upTimes.set(contact, stroke.upTime());
+                }
+                result.add(new Stroke(contact, stroke.times, stroke.xs, stroke.ys));
+            }
+            return new Gesture(List.copyOf(result), upTimes.size());
+        }
+
+        // *********************************************************************************
+        // InternalConstructors
+        // *********************************************************************************
+
+        private Builder() {
+        }
+
+    }
+
+}
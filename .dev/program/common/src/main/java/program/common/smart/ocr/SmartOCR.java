@@ -18,18 +18,33 @@ package program.common.smart.ocr;
 
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
 import program.common.basic.logger.Logger;
 import program.common.basic.resource.ResUtl;
 import program.common.basic.resource.conf.Config;
 import program.common.basic.resource.conf.ConfigTemplate;
 import program.common.basic.resource.conf.Configurable;
+import program.common.basic.task.Task;
+import program.common.basic.task.TaskResult;
 import program.common.basic.utility.WeakSet;
+import program.common.basic.vision.Area;
 import program.common.basic.vision.Image;
+import program.common.basic.vision.ImageOps;
 import program.common.smart.ocr._impl.OCR;
+import program.common.smart.ocr._impl.OCRCache;
+import program.common.smart.ocr._impl.OCRPool;
+import program.common.smart.ocr._impl.glyph.GlyphAtlas;
+import program.common.smart.ocr._impl.glyph.GlyphOCR;
 import program.common.smart.ocr._impl.tesseract.TesseractOCR;
 import program.common.smart.ocr.model.OCRCharBoxList;
+import program.common.smart.ocr.model.OCRProfile;
+import program.common.smart.ocr.model.OCRRegion;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 
 /**
@@ -62,38 +77,291 @@ public final class SmartOCR extends Configurable {
     // *****************************************************************************************
     // *****************************************************************************************
 
-    private OCR ocr;
+    private volatile OCRPool pool;
+    private volatile OCRCache cache;
+    // the settings affecting results, mixed into the keys of the cache
+    private volatile String settings;
+    // the glyph atlas in use (`ocr.impl=glyph`), whose size is mixed into the keys as well, so
+    // that the results read before glyphs are learnt are not returned afterwards; null if unused
+    private volatile GlyphAtlas atlas;
+    // Note: The lifecycle lock is held (read) by the recognitions and (write) by releasing and
+    // reinitializing, so that the pool and the cache are not closed under the recognitions.
+    private final ReentrantReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
 
     // *****************************************************************************************
     // Methods, recognizing image
     // *****************************************************************************************
 
-    public synchronized OCRCharBoxList textarea(Image image) {
-        acquireNotClosed();
-        long start = System.nanoTime();
-        ocr.setImage(image);
-        OCRCharBoxList result = ocr.textarea(0, 0, image.width(), image.height());
-        long cost = (System.nanoTime() - start) / 1_000_000;
-        Logger.info("ocr(%dms) @ %s => %s", cost, image.name(), result.inline(0));
-        return result;
+    public OCRCharBoxList textarea(Image image) {
+        return textarea(image, OCRProfile.DEFAULT);
+    }
+
+    // Note: Calls from different threads are recognized concurrently, up to the pool size.
+    public OCRCharBoxList textarea(Image image, OCRProfile profile) {
+        lock();
+        try {
+            long key = cacheKey(image, 0, 0, image.width(), image.height(), profile);
+            OCRCharBoxList result = cached(key, image.name());
+            if (result != null) {return result;}
+            result = pool.apply(ocr -> textarea(ocr, image, profile));
+            cache.put(key, result);
+            return result;
+        } finally {
+            unlock();
+        }
+    }
+
+    public List<OCRCharBoxList> textareas(List<Image> images) {
+        return textareas(images, OCRProfile.DEFAULT);
+    }
+
+    // Note: The images are recognized concurrently, up to the pool size.
+    //
+    // @return results of the given images (in the same order)
+    public List<OCRCharBoxList> textareas(List<Image> images, OCRProfile profile) {
+        lock();
+        try {
+            OCRPool pool = this.pool;
+            int n = images.size();
+            OCRCharBoxList[] results = new OCRCharBoxList[n];
+            long[] keys = new long[n];
+            List<Integer> indexes = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Image image = images.get(i);
+                keys[i] = cacheKey(image, 0, 0, image.width(), image.height(), profile);
+                results[i] = cached(keys[i], image.name());
+                if (results[i] == null) {
+                    indexes.add(i);
+                }
+            }
+            List<TaskResult<OCRCharBoxList>> taskResults = new ArrayList<>(indexes.size());
+            // the last image is recognized by the current thread
+            for (int k = 0; k < indexes.size() - 1; k++) {
+                Image image = images.get(indexes.get(k));
+                String taskName = "SmartOCR#textarea(" + image.name() + ")";
+                taskResults.add(Task.basic(taskName, () -> {
+                    return pool.apply(ocr -> textarea(ocr, image, profile));
+                }).submit());
+            }
+            if (!indexes.isEmpty()) {
+                int last = indexes.get(indexes.size() - 1);
+                results[last] = pool.apply(ocr -> textarea(ocr, images.get(last), profile));
+                cache.put(keys[last], results[last]);
+            }
+            for (int k = 0; k < taskResults.size(); k++) {
+                int i = indexes.get(k);
+                results[i] = taskResults.get(k).waitUntilComplete(-1);
+                cache.put(keys[i], results[i]);
+            }
+            return Arrays.asList(results);
+        } finally {
+            unlock();
+        }
+    }
+
+    // Note: The frame is preprocessed once into a composite covering all the regions, which is
+    // set to each ocr instance once; The regions are then recognized by rectangle, split among
+    // the instances (up to the pool size). Regions found in the cache are not recognized.
+    //
+    // @param [regions] regions whose crops are areas in the given frame, each recognized with its
+    // own profile
+    // @return results of the given regions (in the same order)
+    public List<OCRCharBoxList> textareas(Image frame, List<OCRRegion> regions) {
+        lock();
+        try {
+            OCRPool pool = this.pool;
+            int n = regions.size();
+            List<ImageOps> opsList = regions.stream().map(OCRRegion::ops).toList();
+            if (n == 0) {return new ArrayList<>(0);}
+            long start = System.nanoTime();
+            Area bounds = Area.union(frame.name(), opsList.stream()
+                    .map(ops -> (ops.crop() == null)
+                            ? new Area(frame.name(), 0, 0, frame.width(), frame.height())
+                            : ops.crop())
+                    .toList());
+            Image composite = frame.mutate(bounds, opsList);
+            // crops relative to the composite
+            List<Area> crops = new ArrayList<>(n);
+            OCRCharBoxList[] results = new OCRCharBoxList[n];
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                Area crop = opsList.get(i).crop();
+                if (crop == null) {
+                    crop = new Area(frame.name(), 0, 0, frame.width(), frame.height());
+                }
+                crops.add(new Area(
+                        crop.name(), crop.x() - bounds.x(), crop.y() - bounds.y(),
+                        crop.width(), crop.height()
+                ));
+            }
+            List<Integer> indexes = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Area crop = crops.get(i);
+                OCRProfile profile = regions.get(i).profile();
+                keys[i] = cacheKey(
+                        composite, crop.x(), crop.y(), crop.width(), crop.height(), profile
+                );
+                results[i] = cached(keys[i], crop.name());
+                if (results[i] == null) {
+                    indexes.add(i);
+                }
+            }
+            int m = indexes.size();
+            int groups = Math.min(pool.size(), m);
+            List<TaskResult<Void>> taskResults = new ArrayList<>(groups);
+            // the last group is recognized by the current thread
+            for (int g = 0; g < groups - 1; g++) {
+                List<Integer> group = indexes.subList(m * g / groups, m * (g + 1) / groups);
+                String taskName = "SmartOCR#textareas(" + frame.name() + ")";
+                taskResults.add(Task.basic(taskName, () -> {
+                    return pool.apply(ocr -> textareas(
+                            ocr, composite, crops, regions, results, group
+                    ));
+                }).submit());
+            }
+            if (groups > 0) {
+                List<Integer> group = indexes.subList(m * (groups - 1) / groups, m);
+                pool.apply(ocr -> textareas(ocr, composite, crops, regions, results, group));
+            }
+            for (TaskResult<Void> taskResult : taskResults) {
+                taskResult.waitUntilComplete(-1);
+            }
+            for (int i : indexes) {
+                cache.put(keys[i], results[i]);
+            }
+            long cost = (System.nanoTime() - start) / 1_000_000;
+            String format = "ocr batch(%dms) @ %s, %d regions, %d recognized";
+            Logger.info(format, cost, frame.name(), n, m);
+            return Arrays.asList(results);
+        } finally {
+            unlock();
+        }
+    }
+
+    // *****************************************************************************************
+    // Methods, learning glyph
+    // *****************************************************************************************
+
+    // Note: The glyphs are learnt into the atlas of the language of this ocr (used by
+    // `ocr.impl=glyph`) whichever implementation is in use, so that the atlas can be bootstrapped
+    // by the results of tesseract. The results cached before are not returned afterwards (the
+    // size of the atlas is in the keys).
+    //
+    // @param [image] preprocessed crop (dark text on light background), such as the result of
+    // `Image.mutate(ImageOps)`
+    // @param [text] text in the image
+    public void learnGlyphs(Image image, String text) {
+        lock();
+        try {
+            GlyphOCR.atlas(config.getValue("text.language")).learn(image, text);
+        } finally {
+            unlock();
+        }
+    }
+
+    // *****************************************************************************************
+    // Methods, getting stat string
+    // *****************************************************************************************
+
+    public String cacheStatText() {
+        lock();
+        try {
+            return cache.statText();
+        } finally {
+            unlock();
+        }
     }
 
     // *****************************************************************************************
     // OverrideMethods, Configurable
     // *****************************************************************************************
 
+    // Note: Called with the monitor of this ocr held (see `Configurable`), which must not be
+    // locked by the recognitions, otherwise they would deadlock with the write lock here.
     @Override
     protected void release() {
-        if (ocr != null) {
-            ocr.close();
-            ocr = null;
+        lifecycleLock.writeLock().lock();
+        try {
+            release0();
+        } finally {
+            lifecycleLock.writeLock().unlock();
         }
     }
 
     protected void reinitialize() {
+        lifecycleLock.writeLock().lock();
+        try {
+            reinitialize0();
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    private void release0() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (cache != null) {
+            cache.close();
+            cache = null;
+        }
+    }
+
+    private void reinitialize0() {
         OCRImpl ocrImpl = config.getValueAsEnum("ocr.impl", OCRImpl.class);
+        int poolSize = config.getValueAsInt("ocr.pool-size");
+        if (poolSize <= 0) {
+            poolSize = Runtime.getRuntime().availableProcessors();
+        }
+        int cacheCapacity = config.getValueAsInt("ocr.cache.capacity");
+        boolean cachePersistent = Boolean.parseBoolean(config.getValue("ocr.cache.persistent"));
+        File configFile = config.file().getAbsoluteFile();
+        File cacheFile = new File(configFile.getParentFile(), configFile.getName() + ".ocrcache");
+
+        pool = new OCRPool(poolSize, () -> ocrImpl.constructor.apply(config));
+        cache = new OCRCache(cacheCapacity, cachePersistent ? cacheFile : null);
+        String language = config.getValue("text.language");
+        settings = ocrImpl.name() + '|' + language;
+        atlas = (ocrImpl == OCRImpl.glyph) ? GlyphOCR.atlas(language) : null;
+    }
 
-        ocr = ocrImpl.constructor.apply(config);
+    // Note: Unlike `acquireNotClosed()`, the monitor of this ocr is not locked.
+    private void lock() {
+        lifecycleLock.readLock().lock();
+        // the cache is the last one initialized
+        if (cache == null) {
+            lifecycleLock.readLock().unlock();
+            String message = "Configurable [SmartOCR] closed";
+            throw new InvocationException(message)
+                    .with("config_path", config.file().getAbsolutePath());
+        }
+    }
+
+    private void unlock() {
+        lifecycleLock.readLock().unlock();
+    }
+
+    // Note: The key covers the (preprocessed) pixels of the area and the settings affecting the
+    // results, including the profile and the size of the glyph atlas (only ever growing).
+    private long cacheKey(Image image, int x, int y, int width, int height, OCRProfile profile) {
+        GlyphAtlas atlas = this.atlas;
+        String settings = this.settings + '|' + profile;
+        if (atlas != null) {settings += "|" + atlas.size();}
+        return image.hash(x, y, width, height) ^ fnv(settings);
+    }
+
+    // @return the cached result, or null if absent
+    private OCRCharBoxList cached(long key, String name) {
+        OCRCharBoxList result = cache.get(key);
+        if (result != null) {
+            Logger.info("ocr(cached) @ %s => %s", name, result.inline(0));
+        }
+        return result;
     }
 
     // *****************************************************************************************
@@ -104,6 +372,43 @@ public final class SmartOCR extends Configurable {
         super(config);
     }
 
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static Void textareas(
+            OCR ocr, Image composite, List<Area> crops, List<OCRRegion> regions,
+            OCRCharBoxList[] results, List<Integer> indexes) {
+        ocr.setImage(composite);
+        for (int i : indexes) {
+            long start = System.nanoTime();
+            Area crop = crops.get(i);
+            OCRProfile profile = regions.get(i).profile();
+            results[i] = ocr.textarea(crop.x(), crop.y(), crop.width(), crop.height(), profile);
+            long cost = (System.nanoTime() - start) / 1_000_000;
+            Logger.info("ocr(%dms) @ %s => %s", cost, crop.name(), results[i].inline(0));
+        }
+        return null;
+    }
+
+    private static OCRCharBoxList textarea(OCR ocr, Image image, OCRProfile profile) {
+        long start = System.nanoTime();
+        ocr.setImage(image);
+        OCRCharBoxList result = ocr.textarea(0, 0, image.width(), image.height(), profile);
+        long cost = (System.nanoTime() - start) / 1_000_000;
+        Logger.info("ocr(%dms) @ %s => %s", cost, image.name(), result.inline(0));
+        return result;
+    }
+
+    // 64-bit fnv-1a of the given text
+    private static long fnv(String text) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0, l = text.length(); i < l; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
     // *****************************************************************************************
     // InternalEnums
     // *****************************************************************************************
@@ -113,6 +418,7 @@ public final class SmartOCR extends Configurable {
     private enum OCRImpl {
 
         tesseract(TesseractOCR::new),
+        glyph(GlyphOCR::new),
         ;
 
         final Function<Config, OCR> constructor;
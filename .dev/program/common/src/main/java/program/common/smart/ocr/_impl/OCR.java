@@ -19,6 +19,7 @@ package program.common.smart.ocr._impl;
 import program.common.basic.resource.SilentCloseable;
 import program.common.basic.vision.Image;
 import program.common.smart.ocr.model.OCRCharBoxList;
+import program.common.smart.ocr.model.OCRProfile;
 
 /**
  * OCR.
@@ -34,6 +35,7 @@ public interface OCR extends SilentCloseable {
 
     void setImage(Image image);
 
-    OCRCharBoxList textarea(int x, int y, int width, int height);
+    // Note: The profile applies to this recognition only.
+    OCRCharBoxList textarea(int x, int y, int width, int height, OCRProfile profile);
 
 }
@@ -0,0 +1,183 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.logger.Logger;
+import program.common.basic.resource.SilentCloseable;
+import program.common.smart.ocr.model.OCRCharBoxList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * OCR cache, mapping the content hash of images to their results (least recently used evicted).
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class OCRCache implements SilentCloseable {
+
+    // "OCRC" + format version
+    private static final int MAGIC = 0x4F435243;
+    private static final int VERSION = 1;
+
+    private final @Getter int capacity;
+    // the file to persist into, or null if not persistent
+    private final File file;
+
+    private final LinkedHashMap<Long, OCRCharBoxList> map;
+
+    private @Getter long hits = 0;
+    private @Getter long misses = 0;
+
+    private boolean closed = false;
+
+    // *****************************************************************************************
+    // Methods, accessing cache
+    // *****************************************************************************************
+
+    // @return a copy of the cached result, or null if absent
+    public synchronized OCRCharBoxList get(long key) {
+        OCRCharBoxList value = map.get(key);
+        if (value == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return value.copy();
+    }
+
+    public synchronized void put(long key, OCRCharBoxList value) {
+        if (capacity == 0) {return;}
+        map.put(key, value.copy());
+    }
+
+    // *****************************************************************************************
+    // Methods, getting stat string
+    // *****************************************************************************************
+
+    public synchronized String statText() {
+        long total = hits + misses;
+        double rate = (total == 0) ? 0 : (100.0 * hits / total);
+        return format("%d hits, %d misses (%.2f%%), %d/%d entries",
+                hits, misses, rate, map.size(), capacity);
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public synchronized boolean closed() {
+        return closed;
+    }
+
+    // Note: The entries are saved to the file if persistent.
+    @Override
+    public synchronized void close() {
+        if (closed) {return;}
+        closed = true;
+        Logger.info("ocr cache: %s", statText());
+        if (file == null) {return;}
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(map.size());
+            // from the least recently used, so that the order is kept when loaded
+            for (Map.Entry<Long, OCRCharBoxList> entry : map.entrySet()) {
+                OCRCharBoxList value = entry.getValue();
+                output.writeLong(entry.getKey());
+                output.writeInt(value.size());
+                for (int i = 0, n = value.size(); i < n; i++) {
+                    output.writeInt(value.x(i));
+                    output.writeInt(value.y(i));
+                    output.writeInt(value.width(i));
+                    output.writeInt(value.height(i));
+                    output.writeChar(value.character(i));
+                    output.writeFloat(value.accuracy(i));
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn("failed to save ocr cache into %s: %s", file, e);
+        }
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    // @param [capacity] max number of entries, 0 to disable the cache
+    // @param [file] the file to persist into, or null if not persistent
+    public OCRCache(int capacity, File file) {
+        this.capacity = Math.max(capacity, 0);
+        this.file = file;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, OCRCharBoxList> eldest) {
+                return size() > OCRCache.this.capacity;
+            }
+        };
+        if ((file != null) && file.isFile()) {
+            load();
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // Note: A corrupt or outdated file is ignored (the cache starts empty).
+    private void load() {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if ((input.readInt() != MAGIC) || (input.readInt() != VERSION)) {
+                Logger.warn("ignored ocr cache of unknown format: %s", file);
+                return;
+            }
+            for (int i = 0, n = input.readInt(); i < n; i++) {
+                long key = input.readLong();
+                int m = input.readInt();
+                OCRCharBoxList value = new OCRCharBoxList(m);
+                for (int j = 0; j < m; j++) {
+                    value.add(
+                            input.readInt(), input.readInt(), input.readInt(), input.readInt(),
+                            input.readChar(), input.readFloat()
+                    );
+                }
+                map.put(key, value);
+            }
+        } catch (IOException e) {
+            map.clear();
+            Logger.warn("ignored corrupt ocr cache %s: %s", file, e);
+        }
+    }
+
+}
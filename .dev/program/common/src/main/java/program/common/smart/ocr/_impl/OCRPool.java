@@ -0,0 +1,156 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.exception.InvocationException;
+import program.common.basic.resource.SilentCloseable;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * OCR pool, lending each {@link OCR} to one thread at a time.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class OCRPool implements SilentCloseable {
+
+    private final @Getter int size;
+    private final Supplier<OCR> factory;
+
+    private final BlockingQueue<OCR> idle = new LinkedBlockingQueue<>();
+    // number of ocr instances created (or being created), either idle or checked out
+    private int created = 0;
+
+    private volatile boolean closed = false;
+
+    // *****************************************************************************************
+    // Methods, borrowing ocr
+    // *****************************************************************************************
+
+    // Note: The ocr is checked out for the function only, and returned to the pool afterwards.
+    public <T> T apply(Function<OCR, T> function) {
+        OCR ocr = checkout();
+        try {
+            return function.apply(ocr);
+        } finally {
+            checkin(ocr);
+        }
+    }
+
+    // Note: Instances are created lazily (initializing an ocr is expensive), so the pool only
+    // grows to the size needed by the concurrency actually seen.
+    //
+    // WARNING: The ocr must be returned by `checkin(OCR)` once it is no longer used.
+    public OCR checkout() {
+        acquireNotClosed();
+        OCR ocr = idle.poll();
+        if (ocr != null) {return ocr;}
+        boolean creatable;
+        synchronized (idle) {
+            acquireNotClosed();
+            creatable = (created < size);
+            if (creatable) {created++;}
+        }
+        if (creatable) {
+            // created outside the lock, so that others can still check out idle instances
+            try {
+                return factory.get();
+            } catch (RuntimeException e) {
+                synchronized (idle) {created--;}
+                throw e;
+            }
+        }
+        try {
+            // polled with timeout, because nothing will be checked in once the pool is closed
+            while ((ocr = idle.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                acquireNotClosed();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvocationException(e);
+        }
+        return ocr;
+    }
+
+    // Note: If the pool has been closed, the ocr is closed instead.
+    public void checkin(OCR ocr) {
+        if (closed) {
+            ocr.close();
+        } else {
+            idle.add(ocr);
+            // the pool may be closed after the check above
+            if (closed && idle.remove(ocr)) {
+                ocr.close();
+            }
+        }
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public boolean closed() {
+        return closed;
+    }
+
+    // Note: Idle instances are closed at once, checked out ones are closed when checked in.
+    @Override
+    public void close() {
+        synchronized (idle) {
+            if (closed) {return;}
+            closed = true;
+        }
+        for (OCR ocr; (ocr = idle.poll()) != null; ) {
+            ocr.close();
+        }
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    public OCRPool(int size, Supplier<OCR> factory) {
+        if (size < 1) {
+            String message = "Illegal size of ocr pool";
+            throw new InvocationException(message)
+                    .with("size", size);
+        }
+        this.size = size;
+        this.factory = factory;
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    private void acquireNotClosed() {
+        if (closed) {
+            String message = "OCR pool closed";
+            throw new InvocationException(message);
+        }
+    }
+
+}
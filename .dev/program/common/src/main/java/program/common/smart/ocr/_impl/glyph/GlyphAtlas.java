@@ -0,0 +1,227 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl.glyph;
+
+import program.common.basic.exception.InvocationException;
+import program.common.basic.logger.Logger;
+import program.common.basic.vision.Area;
+import program.common.basic.vision.Image;
+import program.common.smart.ocr.model.OCRCharBox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+
+/**
+ * Glyph atlas, the templates of the glyphs which {@link GlyphOCR} classifies against.
+ *
+ * <p>Each template is a png in the directory of the atlas, named as `U+<code point>.<any>.png`
+ * (such as `U+8FD8.0.png` for `还`), whose dark pixels are the glyph. Templates are learnt from
+ * preprocessed crops with known text by {@link #learn(Image, String)}, reachable through
+ * `SmartOCR.learnGlyphs(Image, String)`.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class GlyphAtlas {
+
+    private static final Pattern FILENAME = Pattern.compile("U\\+(?<code>[0-9A-F]{4,6})\\..*png");
+
+    // character reported if no template is allowed by the whitelist
+    private static final char UNKNOWN = '\uFFFD';
+    // max penalty of aspect ratio difference (in accuracy)
+    private static final double MAX_ASPECT_PENALTY = 0.5;
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    // Note: A missing directory is loaded as an empty atlas.
+    public static GlyphAtlas load(File directory) {
+        GlyphAtlas atlas = new GlyphAtlas(directory);
+        File[] files = directory.listFiles();
+        if (files == null) {return atlas;}
+        for (File file : files) {
+            Matcher matcher = FILENAME.matcher(file.getName());
+            if (!matcher.matches()) {continue;}
+            char character = (char) Integer.parseInt(matcher.group("code"), 16);
+            Image image;
+            try {
+                image = Image.read(file.getName(), new FileInputStream(file));
+            } catch (IOException e) {
+                throw new InvocationException(e)
+                        .with("glyph_path", file);
+            }
+            GlyphBitmap bitmap = new GlyphBitmap(image);
+            int[] box = bitmap.bounds(0, 0, bitmap.width(), bitmap.height());
+            if (box == null) {continue;}
+            atlas.templates.add(new Template(character, bitmap, box));
+        }
+        return atlas;
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    private final File directory;
+    // copied on write, because templates may be learnt while others are classifying
+    private final List<Template> templates = new CopyOnWriteArrayList<>();
+
+    // *****************************************************************************************
+    // Methods, getting metadata
+    // *****************************************************************************************
+
+    public int size() {
+        return templates.size();
+    }
+
+    // *****************************************************************************************
+    // Methods, learning glyph
+    // *****************************************************************************************
+
+    // Note: The image is segmented as `GlyphOCR` does, then adjacent columns closest to each
+    // other are merged until there is one per character (whitespaces excluded). Each glyph is
+    // saved into the directory of the atlas and added to this atlas.
+    //
+    // @param [image] preprocessed crop (dark text on light background), such as the result of
+    // `Image.mutate(ImageOps)`
+    // @param [text] text in the image
+    public synchronized void learn(Image image, String text) {
+        String characters = text.replaceAll("\\s", "");
+        GlyphBitmap bitmap = new GlyphBitmap(image);
+        List<int[]> columns = bitmap.columns(0, 0, bitmap.width(), bitmap.height());
+        if (characters.isEmpty() || (columns.size() < characters.length())) {
+            String message = "Fewer glyphs than characters";
+            throw new InvocationException(message)
+                    .with("image", image.name())
+                    .with("text", text)
+                    .with("glyph_count", columns.size());
+        }
+        while (columns.size() > characters.length()) {
+            int closest = 0;
+            for (int i = 1; i < columns.size() - 1; i++) {
+                if (gap(columns, i) < gap(columns, closest)) {closest = i;}
+            }
+            columns.set(closest, union(columns.get(closest), columns.remove(closest + 1)));
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            String message = "Failed to create directory of glyph atlas";
+            throw new InvocationException(message)
+                    .with("directory", directory);
+        }
+        long learntAt = System.currentTimeMillis();
+        for (int i = 0; i < characters.length(); i++) {
+            char character = characters.charAt(i);
+            int[] box = columns.get(i);
+            String filename = format("U+%04X.%d-%d.png", (int) character, learntAt, i);
+            image.crop(new Area(filename, box[0], box[1], box[2], box[3]))
+                    .save(directory, filename);
+            templates.add(new Template(character, bitmap, box));
+            Logger.info("glyph learnt: %s => %s", character, filename);
+        }
+    }
+
+    // *****************************************************************************************
+    // Methods, classifying glyph
+    // *****************************************************************************************
+
+    // Note: Accuracy is the ratio of bits equal to the closest template after normalized, minus a
+    // penalty of the difference of their aspect ratios (normalizing loses it, such as `1` vs `l`).
+    //
+    // @param [box] bounding box (x, y, width, height) of the glyph in the bitmap
+    // @param [whitelist] characters allowed, empty to allow all
+    // @return char box relative to the given origin
+    OCRCharBox classify(GlyphBitmap bitmap, int[] box, int originX, int originY, String whitelist) {
+        long[] bits = bitmap.normalize(box[0], box[1], box[2], box[3]);
+        double aspect = Math.log((double) box[2] / box[3]);
+        char character = UNKNOWN;
+        double accuracy = 0;
+        for (Template template : templates) {
+            if (!whitelist.isEmpty() && (whitelist.indexOf(template.character) < 0)) {continue;}
+            int distance = 0;
+            for (int i = 0; i < GlyphBitmap.WORDS; i++) {
+                distance += Long.bitCount(bits[i] ^ template.bits[i]);
+            }
+            double penalty = Math.min(MAX_ASPECT_PENALTY, Math.abs(aspect - template.aspect) / 4);
+            double candidate = 1 - (double) distance / (GlyphBitmap.GRID * GlyphBitmap.GRID)
+                    - penalty;
+            if (candidate > accuracy) {
+                character = template.character;
+                accuracy = candidate;
+            }
+        }
+        return new OCRCharBox(
+                box[0] - originX, box[1] - originY, box[2], box[3], character, (float) accuracy
+        );
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    private GlyphAtlas(File directory) {
+        this.directory = directory;
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    // @return horizontal gap between the column at the given index and the next one
+    private static int gap(List<int[]> columns, int index) {
+        int[] left = columns.get(index), right = columns.get(index + 1);
+        return right[0] - (left[0] + left[2]);
+    }
+
+    // package method, used by `GlyphOCR`
+    static int[] union(int[] a, int[] b) {
+        int x = Math.min(a[0], b[0]), y = Math.min(a[1], b[1]);
+        int right = Math.max(a[0] + a[2], b[0] + b[2]);
+        int bottom = Math.max(a[1] + a[3], b[1] + b[3]);
+        return new int[]{x, y, right - x, bottom - y};
+    }
+
+    // *****************************************************************************************
+    // InternalStaticClasses
+    // *****************************************************************************************
+
+    private static final class Template {
+
+        private final char character;
+        private final long[] bits;
+        // log of width / height
+        private final double aspect;
+
+        // *********************************************************************************
+        // Constructors
+        // *********************************************************************************
+
+        Template(char character, GlyphBitmap bitmap, int[] box) {
+            this.character = character;
+            this.bits = bitmap.normalize(box[0], box[1], box[2], box[3]);
+            this.aspect = Math.log((double) box[2] / box[3]);
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl.glyph;
+
+import program.common.basic.vision.Image;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Glyph bitmap, the foreground (dark) pixels of an image as bits.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+final class GlyphBitmap {
+
+    // glyphs are normalized into a GRID x GRID bitmap before compared
+    static final int GRID = 16;
+    // number of longs of a normalized glyph
+    static final int WORDS = GRID * GRID / 64;
+
+    // pixels darker than this are foreground
+    private static final int FOREGROUND_THRESHOLD = 128;
+
+    private final int width;
+    private final int height;
+    // longs per row
+    private final int stride;
+    private final long[] bits;
+
+    // *****************************************************************************************
+    // Methods, getting metadata
+    // *****************************************************************************************
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    boolean foreground(int x, int y) {
+        return ((bits[y * stride + (x >>> 6)] >>> (x & 63)) & 1) != 0;
+    }
+
+    // @return bounding box (x, y, width, height) of the foreground in the given area, or null if
+    // there is no foreground
+    int[] bounds(int x, int y, int w, int h) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        for (int j = y; j < y + h; j++) {
+            for (int i = x; i < x + w; i++) {
+                if (!foreground(i, j)) {continue;}
+                minX = Math.min(minX, i);
+                maxX = Math.max(maxX, i);
+                minY = Math.min(minY, j);
+                maxY = Math.max(maxY, j);
+            }
+        }
+        if (maxX < 0) {return null;}
+        return new int[]{minX, minY, maxX - minX + 1, maxY - minY + 1};
+    }
+
+    // *****************************************************************************************
+    // Methods, segmenting glyph
+    // *****************************************************************************************
+
+    // Note: The connected components (8-connectivity) of the foreground in the given area are
+    // merged into columns where their horizontal ranges overlap, such as the dot and the stem
+    // of `i`, or the top and bottom of `分`. A glyph may still span several columns, such as
+    // `秘`.
+    //
+    // @return bounding boxes (x, y, width, height) of the columns, from left to right
+    List<int[]> columns(int x, int y, int w, int h) {
+        List<int[]> components = components(x, y, w, h);
+        components.sort(Comparator.comparingInt(box -> box[0]));
+        List<int[]> columns = new ArrayList<>(components.size());
+        int[] column = null;
+        for (int[] box : components) {
+            if ((column != null) && (box[0] < column[0] + column[2])) {
+                int right = Math.max(column[0] + column[2], box[0] + box[2]);
+                int bottom = Math.max(column[1] + column[3], box[1] + box[3]);
+                column[1] = Math.min(column[1], box[1]);
+                column[2] = right - column[0];
+                column[3] = bottom - column[1];
+            } else {
+                column = box.clone();
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    // *****************************************************************************************
+    // Methods, normalizing glyph
+    // *****************************************************************************************
+
+    // Note: Each cell of the grid is set if at least a third of the pixels it covers are
+    // foreground, so that thin strokes survive downscaling.
+    //
+    // @return the given area scaled into GRID x GRID bits, row by row
+    long[] normalize(int x, int y, int w, int h) {
+        long[] result = new long[WORDS];
+        for (int cy = 0; cy < GRID; cy++) {
+            int y0 = y + cy * h / GRID, y1 = Math.max(y0 + 1, y + (cy + 1) * h / GRID);
+            for (int cx = 0; cx < GRID; cx++) {
+                int x0 = x + cx * w / GRID, x1 = Math.max(x0 + 1, x + (cx + 1) * w / GRID);
+                int count = 0;
+                for (int j = y0; j < y1; j++) {
+                    for (int i = x0; i < x1; i++) {
+                        if (foreground(i, j)) {count++;}
+                    }
+                }
+                if (count * 3 >= (x1 - x0) * (y1 - y0)) {
+                    int index = cy * GRID + cx;
+                    result[index >>> 6] |= 1L << (index & 63);
+                }
+            }
+        }
+        return result;
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    GlyphBitmap(Image image) {
+        this.width = image.width();
+        this.height = image.height();
+        this.stride = (width + 63) >>> 6;
+        this.bits = new long[stride * height];
+        int[] row = new int[width];
+        for (int j = 0; j < height; j++) {
+            image.rgbs(0, j, width, 1, row);
+            for (int i = 0; i < width; i++) {
+                int rgb = row[i];
+                int r = rgb >> 16, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+                if (((r * 77 + g * 150 + b * 29 + 128) >> 8) < FOREGROUND_THRESHOLD) {
+                    bits[j * stride + (i >>> 6)] |= 1L << (i & 63);
+                }
+            }
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // @return bounding boxes (x, y, width, height) of the connected components in the given area
+    private List<int[]> components(int x, int y, int w, int h) {
+        List<int[]> result = new ArrayList<>();
+        boolean[] visited = new boolean[w * h];
+        int[] queue = new int[w * h];
+        for (int start = 0; start < w * h; start++) {
+            if (visited[start] || !foreground(x + start % w, y + start / w)) {continue;}
+            int minX = w, minY = h, maxX = -1, maxY = -1;
+            int head = 0, tail = 0;
+            visited[start] = true;
+            queue[tail++] = start;
+            while (head < tail) {
+                int p = queue[head++], px = p % w, py = p / w;
+                minX = Math.min(minX, px);
+                maxX = Math.max(maxX, px);
+                minY = Math.min(minY, py);
+                maxY = Math.max(maxY, py);
+                for (int dy = -1; dy <= 1; dy++) {
+                    int qy = py + dy;
+                    if ((qy < 0) || (qy >= h)) {continue;}
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int qx = px + dx, q = qy * w + qx;
+                        if ((qx < 0) || (qx >= w) || visited[q]) {continue;}
+                        if (!foreground(x + qx, y + qy)) {continue;}
+                        visited[q] = true;
+                        queue[tail++] = q;
+                    }
+                }
+            }
+            result.add(new int[]{x + minX, y + minY, maxX - minX + 1, maxY - minY + 1});
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl.glyph;
+
+import program.common.basic.exception.InvocationException;
+import program.common.basic.resource.ResUtl;
+import program.common.basic.resource.conf.Config;
+import program.common.basic.vision.Image;
+import program.common.smart.ocr._impl.OCR;
+import program.common.smart.ocr.model.OCRCharBox;
+import program.common.smart.ocr.model.OCRCharBoxList;
+import program.common.smart.ocr.model.OCRProfile;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link OCR} implementation classifying glyphs against a {@link GlyphAtlas} (pure java).
+ *
+ * <p>The fonts of the game are fixed, so the glyphs of a text rendered at the same size are
+ * (almost) the same pixels. The foreground of the region is segmented into glyphs, which are
+ * normalized into small bitmaps and classified by the hamming distance to the templates.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class GlyphOCR implements OCR {
+
+    private static final String ROOT = "/.dev/resources/common/smart/ocr/_impl/glyph/#GlyphAtlas";
+    // atlases are shared by instances (of the pool) of the same language
+    private static final Map<String, GlyphAtlas> ATLASES = new ConcurrentHashMap<>();
+
+    // max number of columns merged into a glyph, see `GlyphBitmap.columns`
+    private static final int MAX_COLUMNS_PER_GLYPH = 3;
+
+    private final GlyphAtlas atlas;
+    private GlyphBitmap bitmap;
+    private boolean closed = false;
+
+    // *****************************************************************************************
+    // StaticMethods, getting atlas
+    // *****************************************************************************************
+
+    // Note: The atlas may be empty, glyphs are learnt into it by `GlyphAtlas.learn`.
+    //
+    // @return the atlas of the given language, shared by the instances
+    public static GlyphAtlas atlas(String language) {
+        return ATLASES.computeIfAbsent(language, GlyphOCR::loadAtlas);
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, OCR
+    // *****************************************************************************************
+
+    @Override
+    public synchronized void setImage(Image image) {
+        bitmap = new GlyphBitmap(image);
+    }
+
+    // Note: Only the whitelist of the profile applies, the others are specific to tesseract.
+    //
+    // Note: Columns are merged into a glyph greedily from left to right, choosing the number of
+    // columns (up to a square) whose classification is the most accurate.
+    @Override
+    public synchronized OCRCharBoxList textarea(
+            int x, int y, int width, int height, OCRProfile profile) {
+        if (bitmap == null) {
+            String message = "No image set to glyph ocr";
+            throw new InvocationException(message);
+        }
+        OCRCharBoxList result = new OCRCharBoxList();
+        List<int[]> columns = bitmap.columns(x, y, width, height);
+        String whitelist = profile.whitelist();
+        for (int i = 0, n = columns.size(); i < n; ) {
+            OCRCharBox best = null;
+            int bestK = 1;
+            int[] box = null;
+            for (int k = 1; (k <= MAX_COLUMNS_PER_GLYPH) && (i + k <= n); k++) {
+                int[] column = columns.get(i + k - 1);
+                box = (box == null) ? column : GlyphAtlas.union(box, column);
+                if ((k > 1) && (box[2] > box[3] * 5 / 4 + 1)) {break;}
+                OCRCharBox candidate = atlas.classify(bitmap, box, x, y, whitelist);
+                if ((best == null) || (candidate.accuracy() > best.accuracy())) {
+                    best = candidate;
+                    bestK = k;
+                }
+            }
+            result.add(best);
+            i += bestK;
+        }
+        return result;
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, SilentCloseable
+    // *****************************************************************************************
+
+    @Override
+    public synchronized void close() {
+        bitmap = null;
+        closed = true;
+    }
+
+    @Override
+    public synchronized boolean closed() {
+        return closed;
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    public GlyphOCR(Config config) {
+        String language = config.getValue("text.language");
+        this.atlas = atlas(language);
+        if (atlas.size() == 0) {
+            String message = "Empty glyph atlas, see `SmartOCR.learnGlyphs(Image, String)`";
+            throw new InvocationException(message)
+                    .with("directory", directory(language));
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static GlyphAtlas loadAtlas(String language) {
+        return GlyphAtlas.load(directory(language));
+    }
+
+    private static File directory(String language) {
+        return new File(ResUtl.home("%s/%s", ROOT, language));
+    }
+
+}
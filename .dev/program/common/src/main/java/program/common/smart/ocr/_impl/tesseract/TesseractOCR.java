@@ -26,6 +26,7 @@ import program.common.basic.vision.Image;
 import program.common.smart.ocr._impl.OCR;
 import program.common.smart.ocr._impl.tesseract.impl.Tesseract;
 import program.common.smart.ocr.model.OCRCharBoxList;
+import program.common.smart.ocr.model.OCRProfile;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -50,8 +51,10 @@ public final class TesseractOCR implements OCR {
         tesseract.setImage(image);
     }
 
-    public synchronized OCRCharBoxList textarea(int x, int y, int width, int height) {
-        return tesseract.recognizeTextBlock(x, y, width, height);
+    @Override
+    public synchronized OCRCharBoxList textarea(
+            int x, int y, int width, int height, OCRProfile profile) {
+        return tesseract.recognizeTextBlock(x, y, width, height, profile);
     }
 
     // *****************************************************************************************
@@ -79,7 +82,11 @@ public final class TesseractOCR implements OCR {
         variables.put("load_system_dawg", "F");
         variables.put("load_freq_dawg", "F");
 
-        tesseract = new Tesseract(textLanguage.tessdata, variables);
+        Tesseract.Binding binding = config.getValueAsEnum(
+                "ocr.tesseract.binding", Tesseract.Binding.class
+        );
+
+        tesseract = new Tesseract(textLanguage.tessdata, variables, binding);
     }
 
     // *****************************************************************************************
@@ -16,21 +16,23 @@
  */
 package program.common.smart.ocr._impl.tesseract.impl;
 
-import com.sun.jna.Pointer;
 import program.common.basic.exception.InvocationException;
 import program.common.basic.logger.Logger;
 import program.common.basic.resource.ResUtl;
 import program.common.basic.resource.SilentCloseable;
 import program.common.basic.vision.Image;
-import program.common.smart.ocr.model.OCRCharBox;
 import program.common.smart.ocr.model.OCRCharBoxList;
+import program.common.smart.ocr.model.OCRProfile;
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.reflect.Constructor;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.IntBuffer;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -41,9 +43,22 @@ import java.util.Map;
  */
 public final class Tesseract implements SilentCloseable {
 
+    private final String datapath;
     private final String language;
-    private final TesseractLib lib = TesseractLib.INSTANCE;
-    private final TesseractLib.TessBaseAPI handle;
+    private final Map<String, String> variables;
+    private final Binding binding;
+    // Note: The engine mode can only be chosen on initialization, so each one used has its own
+    // handle (initialized on first use).
+    private final Map<OCRProfile.EngineMode, Engine> engines =
+            new EnumMap<>(OCRProfile.EngineMode.class);
+
+    // reused by `setImage`, grown on demand
+    private ByteBuffer imagedata;
+    private int[] rowBuffer;
+    // the image set, which is passed to the handle of each engine on its first recognition
+    private int imageWidth, imageHeight, imageBytespp, imageBytespl;
+    // incremented by each `setImage`, 0 if no image has been set
+    private int imageVersion = 0;
 
     private boolean closed = false;
 
@@ -51,75 +66,84 @@ public final class Tesseract implements SilentCloseable {
     // Methods, setting image
     // *****************************************************************************************
 
+    // Note: Binary images are passed as 1bpp, others as 24bpp RGB; The pixels are written into
+    // the direct buffer of this instance, which only grows (tesseract copies the pixels on set).
+    // The buffer is passed to the handle of the engine lazily, see `recognizeTextBlock`.
     public synchronized void setImage(Image image) {
         int w = image.width(), h = image.height();
         BufferedImage bi = image.delegate();
-        int bpp = bi.getColorModel().getPixelSize();
-        if (!(bi.getData().getDataBuffer() instanceof DataBufferByte)) {
-            BufferedImage temp = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
-            Graphics2D g2d = temp.createGraphics();
-            try {
-                g2d.drawImage(bi, 0, 0, null);
-            } finally {
-                g2d.dispose();
-            }
-            bi = temp;
-        } else if (bi.getRaster().getParent() != null) {
-            BufferedImage temp = new BufferedImage(w, h, bi.getType());
-            Graphics2D g2d = temp.createGraphics();
-            try {
-                g2d.drawImage(bi, 0, 0, null);
-            } finally {
-                g2d.dispose();
-            }
-            bi = temp;
+        ByteBuffer imagedata;
+        int bytespp, bytespl;
+        if (bi.getType() == BufferedImage.TYPE_BYTE_BINARY) {
+            bytespp = 0;
+            bytespl = (w + 7) >>> 3;
+            imagedata = imagedata(bytespl * h);
+            putBinary(imagedata, bi, w, h, bytespl);
+        } else {
+            bytespp = 3;
+            bytespl = w * 3;
+            imagedata = imagedata(bytespl * h);
+            putRGB(imagedata, image, w, h);
         }
-        DataBufferByte buf = (DataBufferByte) bi.getData().getDataBuffer();
-        byte[] data = buf.getData();
-        ByteBuffer imagedata = ByteBuffer.allocateDirect(data.length);
-        imagedata.order(ByteOrder.nativeOrder());
-        imagedata.put(data);
         imagedata.flip();
-        int bytespp = bpp / 8, bytespl = (int) Math.ceil(w * bpp / 8.0);
-        lib.TessBaseAPISetImage(handle, imagedata, w, h, bytespp, bytespl);
+        imageWidth = w;
+        imageHeight = h;
+        imageBytespp = bytespp;
+        imageBytespl = bytespl;
+        imageVersion++;
     }
 
     // *****************************************************************************************
     // Methods, recognizing image
     // *****************************************************************************************
 
-    public synchronized OCRCharBoxList recognizeTextBlock(int x, int y, int width, int height) {
+    // Note: The profile is applied to the handle of its engine mode (only the settings differing
+    // from the previous recognition of the handle are changed), without reinitializing it.
+    //
+    // Note: The results are read at the level of the profile, see `OCRProfile.Level`.
+    public synchronized OCRCharBoxList recognizeTextBlock(
+            int x, int y, int width, int height, OCRProfile profile) {
+        if (imageVersion == 0) {
+            String message = "No image set to tesseract";
+            throw new InvocationException(message);
+        }
+        Engine engine = engine(profile.engineMode());
+        TesseractBinding handle = engine.handle;
+        if (engine.imageVersion != imageVersion) {
+            handle.setImage(imagedata, imageWidth, imageHeight, imageBytespp, imageBytespl);
+            engine.imageVersion = imageVersion;
+        }
+        if (engine.pageSegMode != profile.pageSegMode()) {
+            String name = profile.pageSegMode().name();
+            int mode = TesseractLib.TessPageSegMode.valueOf(name).ordinal();
+            handle.setPageSegMode(mode);
+            engine.pageSegMode = profile.pageSegMode();
+        }
+        if (!profile.whitelist().equals(engine.whitelist)) {
+            setVariable(handle, "tessedit_char_whitelist", profile.whitelist());
+            engine.whitelist = profile.whitelist();
+        }
         OCRCharBoxList result = new OCRCharBoxList();
-        int level = TesseractLib.TessPageIteratorLevel.SYMBOL.ordinal();
-        lib.TessBaseAPISetRectangle(handle, x, y, width, height);
-        if (lib.TessBaseAPIRecognize(handle, null) != 0) {
+        handle.setRectangle(x, y, width, height);
+        if (!handle.recognize()) {
             String message = "Failed to recognize image by tesseract";
             throw new InvocationException(message);
         }
-        TesseractLib.TessResultIterator resultItr = lib.TessBaseAPIGetIterator(handle);
-        try {
-            TesseractLib.TessPageIterator pageItr =
-                    lib.TessResultIteratorGetPageIterator(resultItr);
-            lib.TessPageIteratorBegin(pageItr);
-            IntBuffer xb = IntBuffer.allocate(1), yb = IntBuffer.allocate(1);
-            IntBuffer rb = IntBuffer.allocate(1), bb = IntBuffer.allocate(1);
-            do {
-                Pointer textPtr = lib.TessResultIteratorGetUTF8Text(resultItr, level);
-                if (textPtr == null) {continue;}
-                String text = textPtr.getString(0);
-                lib.TessDeleteText(textPtr);
-                float accuracy = lib.TessResultIteratorConfidence(resultItr, level) / 100.0f;
-                lib.TessPageIteratorBoundingBox(pageItr, level, xb, yb, rb, bb);
-                int cx = xb.get(), cy = yb.get(), cw = rb.get() - x, ch = bb.get() - y;
-                xb.clear();
-                yb.clear();
-                rb.clear();
-                bb.clear();
-                result.add(new OCRCharBox(cx, cy, cw, ch, text.charAt(0), accuracy));
-            } while (lib.TessPageIteratorNext(pageItr, level));
-        } finally {
-            lib.TessResultIteratorDelete(resultItr);
+        OCRProfile.Level level = profile.level();
+        if (level == OCRProfile.Level.TEXT) {
+            String text = handle.text();
+            if (text != null) {
+                float accuracy = handle.meanConfidence() / 100.0f;
+                addSpread(result, text, accuracy, 0, 0, width, height);
+            }
+            return result;
         }
+        int ril = TesseractLib.TessPageIteratorLevel.valueOf(level.name()).ordinal();
+        handle.forEach(ril, (text, confidence, left, top, right, bottom) -> {
+            // relative to the rectangle, as if the rectangle was recognized alone
+            int cx = left - x, cy = top - y, cw = right - left, ch = bottom - top;
+            addSpread(result, text, confidence / 100.0f, cx, cy, cw, ch);
+        });
         return result;
     }
 
@@ -132,7 +156,10 @@ public final class Tesseract implements SilentCloseable {
         if (closed) {return;}
         Logger.title(3, "[tesseract] close");
         Logger.attribute("language", language);
-        lib.TessBaseAPIDelete(handle);
+        for (Engine engine : engines.values()) {
+            engine.handle.delete();
+        }
+        engines.clear();
         closed = true;
         Logger.info("tesseract close okay");
         Logger.emptyLine();
@@ -147,32 +174,214 @@ public final class Tesseract implements SilentCloseable {
     // Constructors
     // *****************************************************************************************
 
-    public Tesseract(String language, Map<String, String> variables) {
+    // Note: If the ffm binding is not available, the jna one is used instead.
+    public Tesseract(String language, Map<String, String> variables, Binding binding) {
         Logger.title(3, "[tesseract] init");
         Logger.attribute("language", language);
+        this.datapath = ResUtl.home("/.bin/tesseract/tessdata");
         this.language = language;
-        String datapath = ResUtl.home("/.bin/tesseract/tessdata");
-        Logger.info("initializing TessBaseAPI...");
-        this.handle = lib.TessBaseAPICreate();
-        if (lib.TessBaseAPIInit3(handle, datapath, language) != 0) {
+        this.variables = new HashMap<>(variables);
+        if ((binding == Binding.ffm) && (FFMBindingConstructor.INSTANCE == null)) {
+            Logger.warn("ffm binding of tesseract unavailable, using jna instead");
+            binding = Binding.jna;
+        }
+        Logger.attribute("binding", binding);
+        this.binding = binding;
+        engine(OCRProfile.EngineMode.DEFAULT);
+        Logger.info("tesseract init okay");
+        Logger.emptyLine();
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // @return the engine of the given mode, initialized if absent
+    private Engine engine(OCRProfile.EngineMode engineMode) {
+        Engine engine = engines.get(engineMode);
+        if (engine != null) {return engine;}
+        TesseractLib.TessOcrEngineMode oem = switch (engineMode) {
+            case DEFAULT -> TesseractLib.TessOcrEngineMode.DEFAULT;
+            case LSTM -> TesseractLib.TessOcrEngineMode.LSTM_ONLY;
+            case LEGACY -> TesseractLib.TessOcrEngineMode.TESSERACT_ONLY;
+        };
+        Logger.info("initializing TessBaseAPI (oem: %s)...", oem);
+        TesseractBinding handle = newBinding();
+        if (!handle.init(datapath, language, oem.ordinal())) {
+            handle.delete();
             String message = "Failed to initialize TessBaseAPI";
             throw new InvocationException(message)
                     .with("datapath", datapath)
-                    .with("language", language);
-        }
-        for (Map.Entry<String, String> variable : variables.entrySet()) {
-            String name = variable.getKey();
-            String value = variable.getValue();
-            if (!lib.TessBaseAPISetVariable(handle, name, value)) {
-                String message = "Failed to lookup variable name";
-                throw new InvocationException(message)
-                        .with("datapath", datapath)
-                        .with("language", language)
-                        .with("variable_name", name);
+                    .with("language", language)
+                    .with("oem", oem);
+        }
+        try {
+            for (Map.Entry<String, String> variable : variables.entrySet()) {
+                setVariable(handle, variable.getKey(), variable.getValue());
             }
+        } catch (InvocationException e) {
+            handle.delete();
+            throw e;
         }
-        Logger.info("tesseract init okay");
-        Logger.emptyLine();
+        engine = new Engine(handle);
+        engines.put(engineMode, engine);
+        return engine;
+    }
+
+    private TesseractBinding newBinding() {
+        if (binding == Binding.jna) {return new TesseractJNABinding();}
+        try {
+            return (TesseractBinding) FFMBindingConstructor.INSTANCE.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    private void setVariable(TesseractBinding handle, String name, String value) {
+        if (!handle.setVariable(name, value)) {
+            String message = "Failed to lookup variable name";
+            throw new InvocationException(message)
+                    .with("datapath", datapath)
+                    .with("language", language)
+                    .with("variable_name", name);
+        }
+    }
+
+    // @return the cleared direct buffer of this instance, whose capacity is at least the given one
+    private ByteBuffer imagedata(int capacity) {
+        if ((imagedata == null) || (imagedata.capacity() < capacity)) {
+            int grown = (imagedata == null) ? 0 : (imagedata.capacity() + imagedata.capacity() / 2);
+            imagedata = ByteBuffer.allocateDirect(Math.max(capacity, grown));
+            imagedata.order(ByteOrder.nativeOrder());
+        }
+        imagedata.clear();
+        return imagedata;
+    }
+
+    private int[] rowBuffer(int length) {
+        if ((rowBuffer == null) || (rowBuffer.length < length)) {
+            rowBuffer = new int[length];
+        }
+        return rowBuffer;
     }
 
+    private void putRGB(ByteBuffer imagedata, Image image, int w, int h) {
+        int[] row = rowBuffer(w);
+        for (int j = 0; j < h; j++) {
+            image.rgbs(0, j, w, 1, row);
+            for (int i = 0; i < w; i++) {
+                int rgb = row[i];
+                imagedata.put((byte) (rgb >>> 16)).put((byte) (rgb >>> 8)).put((byte) rgb);
+            }
+        }
+    }
+
+    // Note: The packed bits are copied row by row if the raster is not a shifted child one (such
+    // as a sub image), otherwise they are repacked pixel by pixel.
+    private void putBinary(ByteBuffer imagedata, BufferedImage bi, int w, int h, int bytespl) {
+        WritableRaster raster = bi.getRaster();
+        if ((raster.getSampleModel() instanceof MultiPixelPackedSampleModel sampleModel)
+                && (raster.getDataBuffer() instanceof DataBufferByte dataBuffer)
+                && (sampleModel.getPixelBitStride() == 1)
+                && (sampleModel.getDataBitOffset() == 0)
+                && (raster.getSampleModelTranslateX() == 0)) {
+            byte[] data = dataBuffer.getData();
+            int stride = sampleModel.getScanlineStride();
+            int offset = dataBuffer.getOffset() - raster.getSampleModelTranslateY() * stride;
+            for (int j = 0; j < h; j++) {
+                imagedata.put(data, offset + j * stride, bytespl);
+            }
+            return;
+        }
+        for (int j = 0; j < h; j++) {
+            for (int i = 0; i < w; i += 8) {
+                int b = 0;
+                for (int k = 0; k < 8; k++) {
+                    int sample = (i + k < w) ? raster.getSample(i + k, j, 0) : 0;
+                    b = (b << 1) | (sample & 1);
+                }
+                imagedata.put((byte) b);
+            }
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    // Note: Whitespaces (the separators of words and lines) are skipped, just like at symbol
+    // level; The box is split evenly among the other chars of the text.
+    private static void addSpread(
+            OCRCharBoxList result, String text, float accuracy, int x, int y, int w, int h) {
+        int n = 0;
+        for (int i = 0, l = text.length(); i < l; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {n++;}
+        }
+        for (int i = 0, j = 0, l = text.length(); i < l; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {continue;}
+            int left = x + w * j / n, right = x + w * (j + 1) / n;
+            result.add(left, y, right - left, h, c, accuracy);
+            j++;
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticClasses
+    // *****************************************************************************************
+
+    // Note: The fields record what has been applied to the handle, so that unchanged settings are
+    // not applied again.
+    private static final class Engine {
+
+        private final TesseractBinding handle;
+        private int imageVersion = 0;
+        private OCRProfile.PageSegMode pageSegMode = OCRProfile.PageSegMode.SINGLE_BLOCK;
+        private String whitelist = "";
+
+        // *********************************************************************************
+        // Constructors
+        // *********************************************************************************
+
+        Engine(TesseractBinding handle) {
+            this.handle = handle;
+        }
+
+    }
+
+    // Note: The ffm binding is compiled only by jdk 22+ (see profile `ffm` of the pom) into the
+    // multi-release part of the jar, so it is looked up reflectively (once).
+    private static final class FFMBindingConstructor {
+
+        private static final Constructor<?> INSTANCE = lookup();
+
+        // *********************************************************************************
+        // InternalStaticMethods
+        // *********************************************************************************
+
+        // Note: The class is initialized here, which also loads the library and binds the symbols.
+        //
+        // @return constructor of the ffm binding, or null if unavailable
+        private static Constructor<?> lookup() {
+            try {
+                String name = Tesseract.class.getPackageName() + ".TesseractFFMBinding";
+                return Class.forName(name).getDeclaredConstructor();
+            } catch (ClassNotFoundException e) {
+                Logger.warn("ffm binding of tesseract not compiled (requires jdk 22+)");
+                return null;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                Logger.warn("ffm binding of tesseract failed to load: %s", e);
+                return null;
+            }
+        }
+
+    }
+
+    // *****************************************************************************************
+    // Enums
+    // *****************************************************************************************
+
+    // how the c api of tesseract is called
+    public enum Binding {jna, ffm}
+
 }
@@ -0,0 +1,88 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl.tesseract.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tesseract binding, one TessBaseAPI handle of the c api bound by {@link TesseractJNABinding} or
+ * `TesseractFFMBinding` (see profile `ffm` of the pom).
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+interface TesseractBinding {
+
+    // *****************************************************************************************
+    // Methods, initializing handle
+    // *****************************************************************************************
+
+    // @param [oem] ordinal of `TesseractLib.TessOcrEngineMode`
+    // @return whether the handle is initialized
+    boolean init(String datapath, String language, int oem);
+
+    // @return false if the name lookup failed
+    boolean setVariable(String name, String value);
+
+    // @param [mode] ordinal of `TesseractLib.TessPageSegMode`
+    void setPageSegMode(int mode);
+
+    // *****************************************************************************************
+    // Methods, [setting & recognizing] image
+    // *****************************************************************************************
+
+    // @param [imagedata] direct buffer
+    void setImage(ByteBuffer imagedata, int width, int height, int bytespp, int bytespl);
+
+    void setRectangle(int left, int top, int width, int height);
+
+    // @return whether the recognition succeeded
+    boolean recognize();
+
+    // Note: The bounding boxes are relative to the image (rather than the rectangle).
+    //
+    // @param [level] ordinal of `TesseractLib.TessPageIteratorLevel`
+    void forEach(int level, ElementConsumer consumer);
+
+    // Note: This is the cheapest way to read the result, without any bounding box.
+    //
+    // @return text of the rectangle (lines are ended by '\n'), or null if nothing recognized
+    String text();
+
+    // @return range: [0, 100]
+    int meanConfidence();
+
+    // *****************************************************************************************
+    // Methods, deleting handle
+    // *****************************************************************************************
+
+    void delete();
+
+    // *****************************************************************************************
+    // StaticClasses
+    // *****************************************************************************************
+
+    @FunctionalInterface
+    interface ElementConsumer {
+
+        // @param [text] text of the element, such as a symbol, a word or a line
+        // @param [confidence] range: [0.0, 100.0]
+        void accept(String text, float confidence, int left, int top, int right, int bottom);
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl.tesseract.impl;
+
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * {@link TesseractBinding} implementation based on jna.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+final class TesseractJNABinding implements TesseractBinding {
+
+    private final TesseractLib lib = TesseractLib.INSTANCE;
+    private final TesseractLib.TessBaseAPI handle = lib.TessBaseAPICreate();
+
+    // reused by `forEach`
+    private final IntBuffer left = IntBuffer.allocate(1);
+    private final IntBuffer top = IntBuffer.allocate(1);
+    private final IntBuffer right = IntBuffer.allocate(1);
+    private final IntBuffer bottom = IntBuffer.allocate(1);
+
+    // *****************************************************************************************
+    // OverrideMethods, TesseractBinding
+    // *****************************************************************************************
+
+    @Override
+    public boolean init(String datapath, String language, int oem) {
+        return lib.TessBaseAPIInit2(handle, datapath, language, oem) == 0;
+    }
+
+    @Override
+    public boolean setVariable(String name, String value) {
+        return lib.TessBaseAPISetVariable(handle, name, value);
+    }
+
+    @Override
+    public void setPageSegMode(int mode) {
+        lib.TessBaseAPISetPageSegMode(handle, mode);
+    }
+
+    @Override
+    public void setImage(ByteBuffer imagedata, int width, int height, int bytespp, int bytespl) {
+        lib.TessBaseAPISetImage(handle, imagedata, width, height, bytespp, bytespl);
+    }
+
+    @Override
+    public void setRectangle(int left, int top, int width, int height) {
+        lib.TessBaseAPISetRectangle(handle, left, top, width, height);
+    }
+
+    @Override
+    public boolean recognize() {
+        return lib.TessBaseAPIRecognize(handle, null) == 0;
+    }
+
+    @Override
+    public void forEach(int level, ElementConsumer consumer) {
+        TesseractLib.TessResultIterator resultItr = lib.TessBaseAPIGetIterator(handle);
+        if (resultItr == null) {return;}
+        try {
+            TesseractLib.TessPageIterator pageItr =
+                    lib.TessResultIteratorGetPageIterator(resultItr);
+            lib.TessPageIteratorBegin(pageItr);
+            do {
+                Pointer textPtr = lib.TessResultIteratorGetUTF8Text(resultItr, level);
+                if (textPtr == null) {continue;}
+                String text = textPtr.getString(0);
+                lib.TessDeleteText(textPtr);
+                float confidence = lib.TessResultIteratorConfidence(resultItr, level);
+                if (!lib.TessPageIteratorBoundingBox(pageItr, level, left, top, right, bottom)) {
+                    continue;
+                }
+                consumer.accept(text, confidence, left.get(0), top.get(0), right.get(0),
+                        bottom.get(0));
+            } while (lib.TessPageIteratorNext(pageItr, level));
+        } finally {
+            lib.TessResultIteratorDelete(resultItr);
+        }
+    }
+
+    @Override
+    public String text() {
+        Pointer textPtr = lib.TessBaseAPIGetUTF8Text(handle);
+        if (textPtr == null) {return null;}
+        try {
+            return textPtr.getString(0);
+        } finally {
+            lib.TessDeleteText(textPtr);
+        }
+    }
+
+    @Override
+    public int meanConfidence() {
+        return lib.TessBaseAPIMeanTextConf(handle);
+    }
+
+    @Override
+    public void delete() {
+        lib.TessBaseAPIDelete(handle);
+    }
+
+}
@@ -125,6 +125,15 @@ interface TesseractLib extends Library {
     // "debug" in the name will be set.
     int TessBaseAPIInit3(TessBaseAPI handle, String datapath, String language);
 
+    // The same as Init3, except the ocr engine mode is specified (see TessOcrEngineMode).
+    int TessBaseAPIInit2(TessBaseAPI handle, String datapath, String language, int oem);
+
+    // Set the current page segmentation mode (see TessPageSegMode). Defaults to
+    // PSM_SINGLE_BLOCK.
+    // The mode is stored as an IntParam so it can also be modified by
+    // ReadConfigFile or SetVariable("tessedit_pageseg_mode", mode_as_string).
+    void TessBaseAPISetPageSegMode(TessBaseAPI handle, int mode);
+
     // Recognize a rectangle from an image and return the result as a string.
     // May be called many times for a single Init.
     // Currently has no error checking.
@@ -173,6 +182,13 @@ interface TesseractLib extends Library {
     // DetectOS, or anything else that changes the internal PAGE_RES.
     TessResultIterator TessBaseAPIGetIterator(TessBaseAPI handle);
 
+    // The recognized text is returned as a char* which is coded
+    // as UTF8 and must be freed with the delete [] operator.
+    Pointer TessBaseAPIGetUTF8Text(TessBaseAPI handle);
+
+    // Returns the (average) confidence value between 0 and 100.
+    int TessBaseAPIMeanTextConf(TessBaseAPI handle);
+
     // Moves the iterator to point to the start of the page to begin an
     // iteration.
     void TessPageIteratorBegin(TessPageIterator handle);
@@ -236,6 +252,15 @@ interface TesseractLib extends Library {
     @SuppressWarnings("unused")
     enum TessPageIteratorLevel {BLOCK, PARA, TEXTLINE, WORD, SYMBOL}
 
+    @SuppressWarnings("unused")
+    enum TessOcrEngineMode {TESSERACT_ONLY, LSTM_ONLY, TESSERACT_LSTM_COMBINED, DEFAULT}
+
+    @SuppressWarnings("unused")
+    enum TessPageSegMode {
+        OSD_ONLY, AUTO_OSD, AUTO_ONLY, AUTO, SINGLE_COLUMN, SINGLE_BLOCK_VERT_TEXT, SINGLE_BLOCK,
+        SINGLE_LINE, SINGLE_WORD, CIRCLE_WORD, SINGLE_CHAR, SPARSE_TEXT, SPARSE_TEXT_OSD, RAW_LINE
+    }
+
     // *****************************************************************************************
     // StaticClasses
     // *****************************************************************************************
@@ -16,26 +16,138 @@
  */
 package program.common.smart.ocr.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * OCR char box list.
  *
+ * <p>The char boxes are stored column by column (parallel arrays) rather than as objects, and the
+ * list itself is the char sequence of the characters, so reading the result allocates nothing.
+ *
  * @author wautsns
  * @since {{{SINCE_PLACEHOLDER}}}
  */
-public final class OCRCharBoxList extends LinkedList<OCRCharBox> {
+public final class OCRCharBoxList implements CharSequence, Iterable<OCRCharBox> {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // Note: A char whose horizontal gap to the previous one is wider than this ratio of the line
+    // height starts a new word.
+    private static final double WORD_GAP_RATIO = 0.5;
+
+    private int size = 0;
+    private int[] xs;
+    private int[] ys;
+    private int[] widths;
+    private int[] heights;
+    private char[] characters;
+    private float[] accuracies;
+
+    // *****************************************************************************************
+    // Methods, getting char box
+    // *****************************************************************************************
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int x(int index) {
+        return xs[checkIndex(index)];
+    }
+
+    public int y(int index) {
+        return ys[checkIndex(index)];
+    }
+
+    public int width(int index) {
+        return widths[checkIndex(index)];
+    }
+
+    public int height(int index) {
+        return heights[checkIndex(index)];
+    }
+
+    public char character(int index) {
+        return characters[checkIndex(index)];
+    }
+
+    // @return range: [0.0, 1.0]
+    public float accuracy(int index) {
+        return accuracies[checkIndex(index)];
+    }
+
+    // Note: This method allocates a char box, prefer the column accessors above.
+    public OCRCharBox get(int index) {
+        checkIndex(index);
+        return new OCRCharBox(
+                xs[index], ys[index], widths[index], heights[index],
+                characters[index], accuracies[index]
+        );
+    }
+
+    // *****************************************************************************************
+    // Methods, adding char box
+    // *****************************************************************************************
+
+    public void add(int x, int y, int width, int height, char character, float accuracy) {
+        if (size == characters.length) {
+            grow();
+        }
+        xs[size] = x;
+        ys[size] = y;
+        widths[size] = width;
+        heights[size] = height;
+        characters[size] = character;
+        accuracies[size] = accuracy;
+        size++;
+    }
+
+    public void add(OCRCharBox charBox) {
+        add(
+                charBox.x(), charBox.y(), charBox.width(), charBox.height(),
+                charBox.character(), charBox.accuracy()
+        );
+    }
+
+    // *****************************************************************************************
+    // Methods, copying list
+    // *****************************************************************************************
+
+    // @return a copy whose capacity is trimmed to the size
+    public OCRCharBoxList copy() {
+        OCRCharBoxList copy = new OCRCharBoxList(size);
+        System.arraycopy(xs, 0, copy.xs, 0, size);
+        System.arraycopy(ys, 0, copy.ys, 0, size);
+        System.arraycopy(widths, 0, copy.widths, 0, size);
+        System.arraycopy(heights, 0, copy.heights, 0, size);
+        System.arraycopy(characters, 0, copy.characters, 0, size);
+        System.arraycopy(accuracies, 0, copy.accuracies, 0, size);
+        copy.size = size;
+        return copy;
+    }
 
     // *****************************************************************************************
     // Methods, comparing text
     // *****************************************************************************************
 
+    // Note: The result equals the text if it starts with the text, and each char of the text is
+    // read with enough accuracy.
+    //
+    // @param [accuracy] range: [0.0, 1.0]
     public boolean equalsText(String text, double accuracy) {
-        Iterator<OCRCharBox> iterator = iterator();
-        for (int i = 0, l = text.length(); i < l; i++) {
-            if (!iterator.hasNext()) {return false;}
-            if (text.charAt(i) != iterator.next().character()) {return false;}
+        int l = text.length();
+        if (l > size) {return false;}
+        for (int i = 0; i < l; i++) {
+            if (text.charAt(i) != characters[i]) {return false;}
+            if (accuracies[i] < accuracy) {return false;}
         }
         return true;
     }
@@ -46,22 +158,261 @@ public final class OCRCharBoxList extends LinkedList<OCRCharBox> {
 
     // @param [accuracy] range: [0.0, 1.0]
     public String inline(double accuracy) {
-        StringBuilder bu = new StringBuilder(size());
-        for (OCRCharBox charBox : this) {
-            if (charBox.accuracy() >= accuracy) {
-                bu.append(charBox.character());
+        StringBuilder bu = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            if (accuracies[i] >= accuracy) {
+                bu.append(characters[i]);
             }
         }
         return bu.toString();
     }
 
+    // *****************************************************************************************
+    // Methods, grouping char box
+    // *****************************************************************************************
+
+    // Note: A char starts a new line if it is not vertically overlapping the current line, such as
+    // being below it or on the left of the previous char (the next line in reading order).
+    //
+    // @return lines in reading order
+    public List<Span> lines() {
+        List<Span> result = new ArrayList<>(2);
+        int from = 0;
+        for (int i = 1; i < size; i++) {
+            if (startsLine(from, i)) {
+                result.add(new Span(from, i));
+                from = i;
+            }
+        }
+        if (size > 0) {result.add(new Span(from, size));}
+        return result;
+    }
+
+    // Note: Words are split within lines by the horizontal gap between chars, see
+    // `WORD_GAP_RATIO`.
+    //
+    // @return words in reading order
+    public List<Span> words() {
+        List<Span> result = new ArrayList<>(4);
+        for (Span line : lines()) {
+            int from = line.from, height = line.height();
+            for (int i = line.from + 1; i < line.to; i++) {
+                int gap = xs[i] - (xs[i - 1] + widths[i - 1]);
+                if (gap > height * WORD_GAP_RATIO) {
+                    result.add(new Span(from, i));
+                    from = i;
+                }
+            }
+            result.add(new Span(from, line.to));
+        }
+        return result;
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, CharSequence
+    // *****************************************************************************************
+
+    @Override
+    public int length() {
+        return size;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return character(index);
+    }
+
+    @Override
+    public Span subSequence(int start, int end) {
+        if ((start < 0) || (end > size) || (start > end)) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+        }
+        return new Span(start, end);
+    }
+
+    // *****************************************************************************************
+    // OverrideMethods, Iterable
+    // *****************************************************************************************
+
+    // Note: Each char box is allocated on iteration, prefer the column accessors.
+    @Override
+    public Iterator<OCRCharBox> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public OCRCharBox next() {
+                if (index >= size) {throw new NoSuchElementException();}
+                return get(index++);
+            }
+        };
+    }
+
     // *****************************************************************************************
     // OverrideMethods, Object
     // *****************************************************************************************
 
     @Override
     public String toString() {
-        return inline(0);
+        return new String(characters, 0, size);
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    public OCRCharBoxList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public OCRCharBoxList(int capacity) {
+        this.xs = new int[capacity];
+        this.ys = new int[capacity];
+        this.widths = new int[capacity];
+        this.heights = new int[capacity];
+        this.characters = new char[capacity];
+        this.accuracies = new float[capacity];
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    private int checkIndex(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return index;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, characters.length * 2);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        characters = Arrays.copyOf(characters, capacity);
+        accuracies = Arrays.copyOf(accuracies, capacity);
+    }
+
+    // @return whether the char at the given index starts a new line after the line from `from`
+    private boolean startsLine(int from, int index) {
+        int top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+        for (int i = from; i < index; i++) {
+            top = Math.min(top, ys[i]);
+            bottom = Math.max(bottom, ys[i] + heights[i]);
+        }
+        int y = ys[index], h = heights[index];
+        boolean overlapping = (y < bottom) && (y + h > top);
+        return !overlapping || (xs[index] < xs[index - 1]);
+    }
+
+    // *****************************************************************************************
+    // Classes
+    // *****************************************************************************************
+
+    // Note: The span is a view of the chars in [from, to) of the list, nothing is copied.
+    public final class Span implements CharSequence {
+
+        private final int from;
+        private final int to;
+
+        // *********************************************************************************
+        // Methods, getting metadata
+        // *********************************************************************************
+
+        // @return index of the first char in the list
+        public int from() {
+            return from;
+        }
+
+        // @return index after the last char in the list
+        public int to() {
+            return to;
+        }
+
+        // @return left of the bounding box of the chars
+        public int x() {
+            int result = Integer.MAX_VALUE;
+            for (int i = from; i < to; i++) {result = Math.min(result, xs[i]);}
+            return (from == to) ? 0 : result;
+        }
+
+        // @return top of the bounding box of the chars
+        public int y() {
+            int result = Integer.MAX_VALUE;
+            for (int i = from; i < to; i++) {result = Math.min(result, ys[i]);}
+            return (from == to) ? 0 : result;
+        }
+
+        public int width() {
+            int right = Integer.MIN_VALUE;
+            for (int i = from; i < to; i++) {right = Math.max(right, xs[i] + widths[i]);}
+            return (from == to) ? 0 : (right - x());
+        }
+
+        public int height() {
+            int bottom = Integer.MIN_VALUE;
+            for (int i = from; i < to; i++) {bottom = Math.max(bottom, ys[i] + heights[i]);}
+            return (from == to) ? 0 : (bottom - y());
+        }
+
+        // @return mean accuracy of the chars, range: [0.0, 1.0]
+        public float accuracy() {
+            if (from == to) {return 0;}
+            float sum = 0;
+            for (int i = from; i < to; i++) {sum += accuracies[i];}
+            return sum / (to - from);
+        }
+
+        // *********************************************************************************
+        // OverrideMethods, CharSequence
+        // *********************************************************************************
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((index < 0) || (index >= to - from)) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            return characters[from + index];
+        }
+
+        @Override
+        public Span subSequence(int start, int end) {
+            if ((start < 0) || (end > to - from) || (start > end)) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+            }
+            return new Span(from + start, from + end);
+        }
+
+        // *********************************************************************************
+        // OverrideMethods, Object
+        // *********************************************************************************
+
+        @Override
+        public String toString() {
+            return new String(characters, from, to - from);
+        }
+
+        // *********************************************************************************
+        // InternalConstructors
+        // *********************************************************************************
+
+        private Span(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
     }
 
 }
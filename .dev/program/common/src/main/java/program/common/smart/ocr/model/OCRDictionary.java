@@ -0,0 +1,278 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr.model;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.resource.i18n.I18N;
+import program.common.basic.resource.i18n.Language;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.String.format;
+
+/**
+ * OCR dictionary, resolving (possibly misread) ocr results to the closest texts of a catalog.
+ *
+ * <p>The texts are indexed in a BK-tree by edit distance, so a lookup only visits the texts whose
+ * distance may be within the limit.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public final class OCRDictionary {
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    // Note: The texts are the l10n texts of all keys of the i18n, indexed per language on first
+    // lookup in that language.
+    public static OCRDictionary of(I18N i18n) {
+        return new OCRDictionary(i18n, null);
+    }
+
+    // @param [entries] key => text
+    public static OCRDictionary of(Map<String, String> entries) {
+        return new OCRDictionary(null, Node.build(entries));
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    private final I18N i18n;
+    // the tree of `of(Map)`, or null if built from the i18n
+    private final Node root;
+    private final Map<Language, Node> roots = new ConcurrentHashMap<>(2);
+
+    // *****************************************************************************************
+    // Methods, matching text
+    // *****************************************************************************************
+
+    // Note: The max distance allowed is a quarter of the length of the result (at least 1).
+    //
+    // @return the best match, or null if none is close enough
+    public Match match(OCRCharBoxList result) {
+        return match(result, Math.max(1, result.length() / 4));
+    }
+
+    // Note: Candidates are found by the plain edit distance, then ranked by the score, in which
+    // an edit of a char read with low accuracy costs less (see `score`).
+    //
+    // @param [maxDistance] max edit distance between the result and the text
+    // @return the best match, or null if none is close enough
+    public Match match(OCRCharBoxList result, int maxDistance) {
+        Node root = root();
+        if (root == null) {return null;}
+        String query = result.toString();
+        Match best = null;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int distance = distance(query, node.text);
+            if (distance <= maxDistance) {
+                double score = score(result, node.text);
+                if ((best == null) || (score > best.score)) {
+                    best = new Match(node.keys.get(0), node.text, distance, score);
+                }
+            }
+            for (int d = Math.max(0, distance - maxDistance), l = distance + maxDistance;
+                 d <= l; d++) {
+                Node child = node.children.get(d);
+                if (child != null) {stack.push(child);}
+            }
+        }
+        return best;
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    private OCRDictionary(I18N i18n, Node root) {
+        this.i18n = i18n;
+        this.root = root;
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    // @return the root of the tree of the current language, or null if the catalog is empty
+    private Node root() {
+        if (i18n == null) {return root;}
+        Language language = i18n.language().get();
+        if (language == null) {return null;}
+        return roots.computeIfAbsent(language, ignored -> {
+            Map<String, String> entries = new HashMap<>();
+            for (String key : i18n.keys()) {
+                entries.put(key, i18n.get(key));
+            }
+            return Node.build(entries);
+        });
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    // @return levenshtein distance between the two texts
+    private static int distance(CharSequence a, CharSequence b) {
+        int m = a.length(), n = b.length();
+        int[] prev = new int[n + 1], curr = new int[n + 1];
+        for (int j = 0; j <= n; j++) {prev[j] = j;}
+        for (int i = 1; i <= m; i++) {
+            curr[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                int substitution = prev[j - 1] + ((c == b.charAt(j - 1)) ? 0 : 1);
+                curr[j] = Math.min(substitution, Math.min(prev[j], curr[j - 1]) + 1);
+            }
+            int[] temp = prev;
+            prev = curr;
+            curr = temp;
+        }
+        return prev[n];
+    }
+
+    // Note: The edit distance is weighted by the accuracy of the chars of the result, replacing
+    // or dropping a char costs from 0.5 (accuracy 0) to 1 (accuracy 1), and a missing char costs
+    // 1; The score is 1 minus the weighted distance per char.
+    //
+    // @return range: [0.0, 1.0]
+    private static double score(OCRCharBoxList result, String text) {
+        int m = result.length(), n = text.length();
+        if (Math.max(m, n) == 0) {return 1;}
+        double[] prev = new double[n + 1], curr = new double[n + 1];
+        for (int j = 0; j <= n; j++) {prev[j] = j;}
+        for (int i = 1; i <= m; i++) {
+            double cost = 0.5 + 0.5 * result.accuracy(i - 1);
+            curr[0] = prev[0] + cost;
+            char c = result.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                double substitution = prev[j - 1] + ((c == text.charAt(j - 1)) ? 0 : cost);
+                double deletion = prev[j] + cost, insertion = curr[j - 1] + 1;
+                curr[j] = Math.min(substitution, Math.min(deletion, insertion));
+            }
+            double[] temp = prev;
+            prev = curr;
+            curr = temp;
+        }
+        return Math.max(0, 1 - prev[n] / Math.max(m, n));
+    }
+
+    // *****************************************************************************************
+    // StaticClasses
+    // *****************************************************************************************
+
+    @Accessors(fluent = true)
+    public static final class Match {
+
+        // key of the text in the catalog
+        private final @Getter String key;
+        private final @Getter String text;
+        // plain edit distance between the result and the text
+        private final @Getter int distance;
+        // range: [0.0, 1.0]
+        private final @Getter double score;
+
+        // *********************************************************************************
+        // OverrideMethods, Object
+        // *********************************************************************************
+
+        @Override
+        public String toString() {
+            return format("%s(%s), distance %d, score %.2f", key, text, distance, score);
+        }
+
+        // *********************************************************************************
+        // InternalConstructors
+        // *********************************************************************************
+
+        private Match(String key, String text, int distance, double score) {
+            this.key = key;
+            this.text = text;
+            this.distance = distance;
+            this.score = score;
+        }
+
+    }
+
+    // *****************************************************************************************
+    // InternalStaticClasses
+    // *****************************************************************************************
+
+    private static final class Node {
+
+        private final String text;
+        // keys sharing the text
+        private final List<String> keys = new ArrayList<>(1);
+        // distance => child
+        private final Map<Integer, Node> children = new HashMap<>(4);
+
+        // *********************************************************************************
+        // StaticMethods, building tree
+        // *********************************************************************************
+
+        // @return the root, or null if there is no entry
+        static Node build(Map<String, String> entries) {
+            Node root = null;
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                String key = entry.getKey(), text = entry.getValue();
+                if ((text == null) || text.isBlank()) {continue;}
+                if (root == null) {
+                    root = new Node(text);
+                    root.keys.add(key);
+                    continue;
+                }
+                for (Node node = root; ; ) {
+                    int distance = distance(text, node.text);
+                    if (distance == 0) {
+                        node.keys.add(key);
+                        break;
+                    }
+                    Node child = node.children.get(distance);
+                    if (child == null) {
+                        child = new Node(text);
+                        child.keys.add(key);
+                        node.children.put(distance, child);
+                        break;
+                    }
+                    node = child;
+                }
+            }
+            return root;
+        }
+
+        // *********************************************************************************
+        // InternalConstructors
+        // *********************************************************************************
+
+        private Node(String text) {
+            this.text = text;
+        }
+
+    }
+
+}
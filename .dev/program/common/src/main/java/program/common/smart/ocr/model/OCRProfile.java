@@ -0,0 +1,112 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr.model;
+
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * OCR profile, narrowing the search space of the engine for a region.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class OCRProfile {
+
+    public static final OCRProfile DEFAULT = OCRProfile.builder().build();
+
+    // *****************************************************************************************
+    // StaticMethods, parsing json data
+    // *****************************************************************************************
+
+    // Note: Absent fields take the default values, such as:
+    // {"psm": "SINGLE_LINE", "whitelist": "0123456789", "oem": "LSTM", "level": "WORD"}
+    //
+    // @param [json] json of the profile, or null to get the default one
+    public static OCRProfile parse(JSONObject json) {
+        if (json == null) {return DEFAULT;}
+        return OCRProfile.builder()
+                .pageSegMode(json.getObject("psm", PageSegMode.class))
+                .whitelist(json.getString("whitelist"))
+                .engineMode(json.getObject("oem", EngineMode.class))
+                .level(json.getObject("level", Level.class))
+                .build();
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    private final @Getter PageSegMode pageSegMode;
+    // characters allowed, empty to allow all
+    private final @Getter String whitelist;
+    private final @Getter EngineMode engineMode;
+    private final @Getter Level level;
+
+    // *****************************************************************************************
+    // OverrideMethods, Object
+    // *****************************************************************************************
+
+    // Note: The result identifies the profile, such as being part of cache keys.
+    @Override
+    public String toString() {
+        return "psm=" + pageSegMode + ",oem=" + engineMode + ",level=" + level
+                + ",whitelist=" + whitelist;
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    @Builder
+    private OCRProfile(
+            PageSegMode pageSegMode, String whitelist, EngineMode engineMode, Level level) {
+        this.pageSegMode = (pageSegMode == null) ? PageSegMode.SINGLE_BLOCK : pageSegMode;
+        this.whitelist = (whitelist == null) ? "" : whitelist;
+        this.engineMode = (engineMode == null) ? EngineMode.DEFAULT : engineMode;
+        this.level = (level == null) ? Level.SYMBOL : level;
+    }
+
+    // *****************************************************************************************
+    // Enums
+    // *****************************************************************************************
+
+    // how the region is segmented before recognized
+    public enum PageSegMode {SINGLE_BLOCK, SINGLE_LINE, SINGLE_WORD, SINGLE_CHAR, RAW_LINE}
+
+    // which recognizer is used
+    public enum EngineMode {DEFAULT, LSTM, LEGACY}
+
+    // Note: The level at which the results are read from the engine. Each element read costs a
+    // few native calls, so a coarser level is cheaper; The chars of an element share its
+    // accuracy, and its box is split evenly among them (exact per-char boxes at SYMBOL only).
+    public enum Level {
+
+        // each char
+        SYMBOL,
+        // each word, split by the spaces recognized
+        WORD,
+        // each line
+        TEXTLINE,
+        // the whole text at once, boxed by the region and scored by the mean confidence
+        TEXT
+
+    }
+
+}
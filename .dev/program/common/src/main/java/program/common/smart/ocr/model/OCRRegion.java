@@ -0,0 +1,76 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr.model;
+
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import program.common.basic.vision.ImageOps;
+import program.common.basic.vision.Resolution;
+
+/**
+ * OCR region, the ops to preprocess a region with the profile to recognize it.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+@Accessors(fluent = true)
+public final class OCRRegion {
+
+    // *****************************************************************************************
+    // StaticMethods, initializing instance
+    // *****************************************************************************************
+
+    public static OCRRegion of(ImageOps ops, OCRProfile profile) {
+        return new OCRRegion(ops, profile);
+    }
+
+    // *****************************************************************************************
+    // StaticMethods, parsing json data
+    // *****************************************************************************************
+
+    // Note: The profile is the optional "ocr" field, the rest are fields of the ops.
+    public static OCRRegion parse(JSONObject json) {
+        return new OCRRegion(ImageOps.parse(json), OCRProfile.parse(json.getJSONObject("ocr")));
+    }
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    private final @Getter ImageOps ops;
+    private final @Getter OCRProfile profile;
+
+    // *****************************************************************************************
+    // Methods, scaling region
+    // *****************************************************************************************
+
+    // @return this region with the ops scaled to the given resolution
+    public OCRRegion scale(Resolution resolution) {
+        ImageOps scaled = resolution.scale(ops);
+        return (scaled == ops) ? this : new OCRRegion(scaled, profile);
+    }
+
+    // *****************************************************************************************
+    // InternalConstructors
+    // *****************************************************************************************
+
+    private OCRRegion(ImageOps ops, OCRProfile profile) {
+        this.ops = ops;
+        this.profile = profile;
+    }
+
+}
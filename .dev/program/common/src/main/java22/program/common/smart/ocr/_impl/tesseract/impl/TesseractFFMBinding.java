@@ -0,0 +1,306 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package program.common.smart.ocr._impl.tesseract.impl;
+
+import com.sun.jna.Platform;
+import program.common.basic.exception.InvocationException;
+import program.common.basic.resource.ResUtl;
+
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * {@link TesseractBinding} implementation based on the foreign function and memory api (jdk 22+).
+ *
+ * <p>Unlike jna, each call is a downcall handle invoked exactly (no reflection nor marshalling),
+ * and the memory of the bounding box is allocated once per instance.
+ *
+ * <p>Note: The downcall handles are restricted methods, run with
+ * `--enable-native-access=program.common` to suppress the warning.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+final class TesseractFFMBinding implements TesseractBinding {
+
+    // https://github.com/tesseract-ocr/tesseract/blob/main/include/tesseract/capi.h
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final SymbolLookup LOOKUP = lookup();
+
+    private static final MethodHandle CREATE = downcall(
+            "TessBaseAPICreate", FunctionDescriptor.of(ADDRESS)
+    );
+    private static final MethodHandle DELETE = downcall(
+            "TessBaseAPIDelete", FunctionDescriptor.ofVoid(ADDRESS)
+    );
+    private static final MethodHandle INIT2 = downcall(
+            "TessBaseAPIInit2", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT)
+    );
+    private static final MethodHandle SET_VARIABLE = downcall(
+            "TessBaseAPISetVariable", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS)
+    );
+    private static final MethodHandle SET_PAGE_SEG_MODE = downcall(
+            "TessBaseAPISetPageSegMode", FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT)
+    );
+    private static final MethodHandle SET_IMAGE = downcall(
+            "TessBaseAPISetImage",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT)
+    );
+    private static final MethodHandle SET_RECTANGLE = downcall(
+            "TessBaseAPISetRectangle",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT)
+    );
+    private static final MethodHandle RECOGNIZE = downcall(
+            "TessBaseAPIRecognize", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS)
+    );
+    private static final MethodHandle GET_ITERATOR = downcall(
+            "TessBaseAPIGetIterator", FunctionDescriptor.of(ADDRESS, ADDRESS)
+    );
+    private static final MethodHandle GET_PAGE_ITERATOR = downcall(
+            "TessResultIteratorGetPageIterator", FunctionDescriptor.of(ADDRESS, ADDRESS)
+    );
+    private static final MethodHandle RESULT_ITERATOR_DELETE = downcall(
+            "TessResultIteratorDelete", FunctionDescriptor.ofVoid(ADDRESS)
+    );
+    private static final MethodHandle PAGE_ITERATOR_BEGIN = downcall(
+            "TessPageIteratorBegin", FunctionDescriptor.ofVoid(ADDRESS)
+    );
+    private static final MethodHandle GET_UTF8_TEXT = downcall(
+            "TessResultIteratorGetUTF8Text", FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_INT)
+    );
+    private static final MethodHandle DELETE_TEXT = downcall(
+            "TessDeleteText", FunctionDescriptor.ofVoid(ADDRESS)
+    );
+    private static final MethodHandle CONFIDENCE = downcall(
+            "TessResultIteratorConfidence", FunctionDescriptor.of(JAVA_FLOAT, ADDRESS, JAVA_INT)
+    );
+    private static final MethodHandle BOUNDING_BOX = downcall(
+            "TessPageIteratorBoundingBox",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS)
+    );
+    private static final MethodHandle GET_TEXT = downcall(
+            "TessBaseAPIGetUTF8Text", FunctionDescriptor.of(ADDRESS, ADDRESS)
+    );
+    private static final MethodHandle MEAN_TEXT_CONF = downcall(
+            "TessBaseAPIMeanTextConf", FunctionDescriptor.of(JAVA_INT, ADDRESS)
+    );
+    private static final MethodHandle NEXT = downcall(
+            "TessPageIteratorNext", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT)
+    );
+
+    // Note: The texts returned are zero-terminated of unknown size, so they are reinterpreted as
+    // unbounded before being read.
+    private static final long MAX_TEXT_SIZE = Long.MAX_VALUE;
+
+    // *****************************************************************************************
+    // *****************************************************************************************
+
+    // shared, because the instance is used by the threads checking it out of the pool in turn
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment handle;
+    // reused by `forEach`: left, top, right, bottom
+    private final MemorySegment box = arena.allocate(JAVA_INT, 4);
+
+    // *****************************************************************************************
+    // OverrideMethods, TesseractBinding
+    // *****************************************************************************************
+
+    @Override
+    public boolean init(String datapath, String language, int oem) {
+        try (Arena temp = Arena.ofConfined()) {
+            MemorySegment datapathPtr = temp.allocateFrom(datapath);
+            MemorySegment languagePtr = temp.allocateFrom(language);
+            return (int) INIT2.invokeExact(handle, datapathPtr, languagePtr, oem) == 0;
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public boolean setVariable(String name, String value) {
+        try (Arena temp = Arena.ofConfined()) {
+            MemorySegment namePtr = temp.allocateFrom(name);
+            MemorySegment valuePtr = temp.allocateFrom(value);
+            return (int) SET_VARIABLE.invokeExact(handle, namePtr, valuePtr) != 0;
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public void setPageSegMode(int mode) {
+        try {
+            SET_PAGE_SEG_MODE.invokeExact(handle, mode);
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public void setImage(ByteBuffer imagedata, int width, int height, int bytespp, int bytespl) {
+        // the direct buffer is passed by address, without copying
+        MemorySegment imagedataPtr = MemorySegment.ofBuffer(imagedata);
+        try {
+            SET_IMAGE.invokeExact(handle, imagedataPtr, width, height, bytespp, bytespl);
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public void setRectangle(int left, int top, int width, int height) {
+        try {
+            SET_RECTANGLE.invokeExact(handle, left, top, width, height);
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public boolean recognize() {
+        try {
+            return (int) RECOGNIZE.invokeExact(handle, MemorySegment.NULL) == 0;
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public void forEach(int level, ElementConsumer consumer) {
+        try {
+            MemorySegment resultItr = (MemorySegment) GET_ITERATOR.invokeExact(handle);
+            if (resultItr.equals(MemorySegment.NULL)) {return;}
+            try {
+                MemorySegment pageItr = (MemorySegment) GET_PAGE_ITERATOR.invokeExact(resultItr);
+                PAGE_ITERATOR_BEGIN.invokeExact(pageItr);
+                MemorySegment left = box, top = box.asSlice(4), right = box.asSlice(8);
+                MemorySegment bottom = box.asSlice(12);
+                do {
+                    MemorySegment textPtr = (MemorySegment) GET_UTF8_TEXT.invokeExact(
+                            resultItr, level
+                    );
+                    if (textPtr.equals(MemorySegment.NULL)) {continue;}
+                    String text = textPtr.reinterpret(MAX_TEXT_SIZE).getString(0);
+                    DELETE_TEXT.invokeExact(textPtr);
+                    float confidence = (float) CONFIDENCE.invokeExact(resultItr, level);
+                    int found = (int) BOUNDING_BOX.invokeExact(
+                            pageItr, level, left, top, right, bottom
+                    );
+                    if (found == 0) {continue;}
+                    consumer.accept(
+                            text, confidence, box.getAtIndex(JAVA_INT, 0),
+                            box.getAtIndex(JAVA_INT, 1), box.getAtIndex(JAVA_INT, 2),
+                            box.getAtIndex(JAVA_INT, 3)
+                    );
+                } while ((int) NEXT.invokeExact(pageItr, level) != 0);
+            } finally {
+                RESULT_ITERATOR_DELETE.invokeExact(resultItr);
+            }
+        } catch (InvocationException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public String text() {
+        try {
+            MemorySegment textPtr = (MemorySegment) GET_TEXT.invokeExact(handle);
+            if (textPtr.equals(MemorySegment.NULL)) {return null;}
+            try {
+                return textPtr.reinterpret(MAX_TEXT_SIZE).getString(0);
+            } finally {
+                DELETE_TEXT.invokeExact(textPtr);
+            }
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public int meanConfidence() {
+        try {
+            return (int) MEAN_TEXT_CONF.invokeExact(handle);
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        }
+    }
+
+    @Override
+    public void delete() {
+        try {
+            DELETE.invokeExact(handle);
+        } catch (Throwable e) {
+            throw new InvocationException(e);
+        } finally {
+            arena.close();
+        }
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    TesseractFFMBinding() {
+        try {
+            this.handle = (MemorySegment) CREATE.invokeExact();
+        } catch (Throwable e) {
+            arena.close();
+            throw new InvocationException(e);
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    // Note: The library is looked up in the same directory as the jna binding, then in the paths
+    // of the system.
+    private static SymbolLookup lookup() {
+        String libName = Platform.isWindows() ? "libtesseract530" : "tesseract";
+        File libFile = new File(
+                ResUtl.home("/.bin/tesseract/jna/%s", Platform.RESOURCE_PREFIX),
+                System.mapLibraryName(libName)
+        );
+        if (libFile.isFile()) {
+            return SymbolLookup.libraryLookup(libFile.toPath(), Arena.global());
+        }
+        return SymbolLookup.libraryLookup(System.mapLibraryName(libName), Arena.global());
+    }
+
+    private static MethodHandle downcall(String name, FunctionDescriptor descriptor) {
+        MemorySegment symbol = LOOKUP.find(name).orElseThrow(() -> {
+            String message = "Missing symbol in tesseract library";
+            return new InvocationException(message)
+                    .with("symbol", name);
+        });
+        return LINKER.downcallHandle(symbol, descriptor);
+    }
+
+}
@@ -28,6 +28,7 @@ import program.common.basic.utility.ObV;
 import program.common.basic.utility.WeakSet;
 import program.common.smart.device.SmartDevice;
 import program.common.smart.ocr.SmartOCR;
+import program.driver.basic.GameI18N;
 import program.driver.basic.GameServer;
 
 import java.io.File;
@@ -62,6 +63,7 @@ public final class E7AS extends Configurable {
     private final @Getter String name;
     private final @Getter ObV<GameServer> server;
     private final @Getter ObV<Language> language;
+    private final @Getter GameI18N gameI18N;
 
     private final @Getter SmartDevice device;
     private final @Getter SmartOCR ocr;
@@ -103,6 +105,7 @@ public final class E7AS extends Configurable {
         this.name = name;
         this.server = new ObV<>(null);
         this.language = new ObV<>(null);
+        this.gameI18N = new GameI18N(language);
         String dir = config.file().getParent();
         this.device = SmartDevice.of(new File(dir, "/tools/device.properties"));
         this.ocr = SmartOCR.of(new File(dir, "/tools/ocr.properties"));
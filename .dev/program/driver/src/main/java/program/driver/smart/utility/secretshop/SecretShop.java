@@ -25,12 +25,22 @@ import program.common.basic.task.Task;
 import program.common.basic.vision.Area;
 import program.common.basic.vision.Image;
 import program.common.basic.vision.ImageInArea;
-import program.common.basic.vision.ImageOps;
+import program.common.basic.vision.RegionChangeDetector;
+import program.common.basic.vision.Resolution;
+import program.common.smart.device.model.Condition;
+import program.common.smart.ocr.model.OCRCharBoxList;
+import program.common.smart.ocr.model.OCRDictionary;
+import program.common.smart.ocr.model.OCRRegion;
 import program.driver.E7AS;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static java.lang.String.format;
 
@@ -48,6 +58,15 @@ public final class SecretShop {
     private static final Area SWIPE01 = new Area(630, 610, 20, 20);
     private static final Area SWIPE02 = new Area(630, 90, 20, 20);
 
+    private static final String[] ITEM_TEXT_IDS = {
+            "ITEM1_TEXT", "ITEM2_TEXT", "ITEM3_TEXT", "ITEM4_TEXT", "ITEM5_TEXT", "ITEM6_TEXT"
+    };
+
+    // Note: A wrong purchase costs much more than a missed one, so only the misreads of chars
+    // read with low accuracy are tolerated: the weighted edits of a match must cost less than
+    // an edit of a char of accuracy 0.5 (see `OCRDictionary.score`), whatever its length.
+    private static final double ITEM_MAX_EDIT_COST = 0.75;
+
     // *********************************************************************************
     // *********************************************************************************
 
@@ -55,8 +74,15 @@ public final class SecretShop {
 
     private final DataMap<Area> areaMap;
     private final DataMap<ImageInArea> imageInAreaMap;
-    private final DataMap<ImageOps> ocrImageOpsMap;
+    private final DataMap<OCRRegion> ocrImageOpsMap;
     private final DataMap<String> ocrTextMap;
+    // names of the game items, resolving the misread item texts
+    private final OCRDictionary itemDictionary;
+
+    // skips ocr of the item texts which are unchanged since the previous screenshot
+    private RegionChangeDetector itemTextDetector;
+    private Resolution itemTextResolution;
+    private final Map<String, OCRCharBoxList> itemTextCache = new HashMap<>();
 
     private final @Getter Stat stat;
 
@@ -65,15 +91,17 @@ public final class SecretShop {
     // *********************************************************************************
 
     public boolean isHere(Image screenshot) {
-        Image image = screenshot.mutate(ocrImageOpsMap.get("SECRET_SHOP").payload());
+        OCRRegion region = ocrRegion("SECRET_SHOP");
+        Image image = screenshot.mutate(region.ops());
         String text = ocrTextMap.get("SECRET_SHOP").payload();
-        return e7as.ocr().textarea(image).equalsText(text, 0);
+        return e7as.ocr().textarea(image, region.profile()).equalsText(text, 0);
     }
 
     public int getMinuteLeftUntilRefresh(Image screenshot) {
-        Image image = screenshot.mutate(ocrImageOpsMap.get("NM_LEFT_UNTIL_REFRESH").payload());
+        OCRRegion region = ocrRegion("NM_LEFT_UNTIL_REFRESH");
+        Image image = screenshot.mutate(region.ops());
         Pattern pattern = Pattern.compile(ocrTextMap.get("NM_LEFT_UNTIL_REFRESH").payload());
-        Matcher matcher = pattern.matcher(e7as.ocr().textarea(image).inline(0));
+        Matcher matcher = pattern.matcher(e7as.ocr().textarea(image, region.profile()));
         if (!matcher.find()) {
             throw new IllegalStateException();
         }
@@ -92,15 +120,24 @@ public final class SecretShop {
     public void refresh() {
         Logger.title(1, "[SecretShop] refresh");
         stat.incrementRefreshTimes();
+        // Note: The latency of the device is calibrated by the first refresh (again after the
+        // device is reinitialized), since the dialog opened by the tap is a visible change.
+        if (e7as.device().latency().size() == 0) {
+            e7as.device().latency().measure(
+                    areaMap.get("REFRESH").payload(),
+                    imageInAreaMap.get("REFRESH_ENSURE").payload().area(),
+                    2000
+            );
+        }
         e7as.device().tapUntilAppeared(
                 areaMap.get("REFRESH").payload(),
                 imageInAreaMap.get("REFRESH_ENSURE").payload(),
-                1000
+                e7as.device().latency().suggestTimeout(1000)
         );
         e7as.device().tapUntilDisappeared(
                 areaMap.get("REFRESH_ENSURE").payload(),
                 imageInAreaMap.get("REFRESH_ENSURE").payload(),
-                2000
+                e7as.device().latency().suggestTimeout(2000)
         );
     }
 
@@ -109,22 +146,28 @@ public final class SecretShop {
         Image screenshot;
         for (int i = 0; ; i++) {
             screenshot = e7as.device().screenshot();
-            boolean hasBlank = purchaseIfNeeded(screenshot, "ITEM1_TEXT", "ITEM1_PURCHASE") |
-                    purchaseIfNeeded(screenshot, "ITEM2_TEXT", "ITEM2_PURCHASE") |
-                    purchaseIfNeeded(screenshot, "ITEM3_TEXT", "ITEM3_PURCHASE") |
-                    purchaseIfNeeded(screenshot, "ITEM4_TEXT", "ITEM4_PURCHASE");
+            recognizeItemTexts(screenshot, "ITEM1_TEXT", "ITEM2_TEXT", "ITEM3_TEXT", "ITEM4_TEXT");
+            boolean hasBlank = purchaseIfNeeded("ITEM1_TEXT", "ITEM1_PURCHASE") |
+                    purchaseIfNeeded("ITEM2_TEXT", "ITEM2_PURCHASE") |
+                    purchaseIfNeeded("ITEM3_TEXT", "ITEM3_PURCHASE") |
+                    purchaseIfNeeded("ITEM4_TEXT", "ITEM4_PURCHASE");
             if (!hasBlank || isHere(screenshot)) {break;}
             if (i == 2) {
                 screenshot.save(new File("d://png"), format("error_%s.png", System.currentTimeMillis()));
                 throw new IllegalStateException();
             }
-            Task.sleep(3000);
+            Task.sleep(e7as.device().latency().suggestInterval(3000));
         }
-        e7as.device().swipe(SWIPE01, SWIPE02, 300);
-        Task.sleep(2000);
+        e7as.device().swipe(SWIPE01, SWIPE02, 300).join();
+        // the list keeps scrolling (by inertia) after the swipe, until the items are settled
+        Area item5 = ocrImageOpsMap.get("ITEM5_TEXT").payload().ops().crop();
+        e7as.device().await(
+                Condition.settled(item5, 2), e7as.device().latency().suggestTimeout(2000)
+        );
         screenshot = e7as.device().screenshot();
-        purchaseIfNeeded(screenshot, "ITEM5_TEXT", "ITEM5_PURCHASE");
-        purchaseIfNeeded(screenshot, "ITEM6_TEXT", "ITEM6_PURCHASE");
+        recognizeItemTexts(screenshot, "ITEM5_TEXT", "ITEM6_TEXT");
+        purchaseIfNeeded("ITEM5_TEXT", "ITEM5_PURCHASE");
+        purchaseIfNeeded("ITEM6_TEXT", "ITEM6_PURCHASE");
         Logger.info("SecretShop detect and purchase okay");
         Logger.attribute("refresh.stat", stat.refreshStatText());
         Logger.attribute("covenant_bookmarks.stat", stat.covenantBookmarksStatText());
@@ -143,10 +186,11 @@ public final class SecretShop {
         this.imageInAreaMap = ImageInArea.loadAll(ResUtl.home("%s/#imageInAreaMap", ROOT));
         this.ocrImageOpsMap = DataMap.of(ResUtl.home(
                 "%s/#ocrImageOpsMap/%s", ROOT, language
-        ), ImageOps::parse);
+        ), OCRRegion::parse);
         this.ocrTextMap = DataMap.of(ResUtl.home(
                 "%s/#ocrTextMap/%s", ROOT, language
         ), json -> json.getString("text"));
+        this.itemDictionary = OCRDictionary.of(e7as.gameI18N().items());
         this.stat = new Stat();
     }
 
@@ -154,29 +198,78 @@ public final class SecretShop {
     // InternalMethods
     // *********************************************************************************
 
+    // @return the region scaled to the resolution of the device
+    private OCRRegion ocrRegion(String id) {
+        return ocrImageOpsMap.get(id).payload().scale(e7as.device().resolution());
+    }
+
+    // Note: The detector is rebuilt when the resolution of the device changes, because the
+    // areas watched are scaled by it.
+    private RegionChangeDetector itemTextDetector() {
+        Resolution resolution = e7as.device().resolution();
+        if (itemTextResolution != resolution) {
+            itemTextDetector = new RegionChangeDetector(Stream.of(ITEM_TEXT_IDS)
+                    .map(id -> resolution.scale(ocrImageOpsMap.get(id).payload().ops()).crop())
+                    .toList());
+            itemTextResolution = resolution;
+            itemTextCache.clear();
+        }
+        return itemTextDetector;
+    }
+
+    // Note: The item texts changed since the previous screenshot are recognized in one batch,
+    // and the results are put into `itemTextCache`.
+    private void recognizeItemTexts(Image screenshot, String... ocrImageOpsIds) {
+        RegionChangeDetector itemTextDetector = itemTextDetector();
+        List<String> ids = new ArrayList<>(ocrImageOpsIds.length);
+        List<OCRRegion> regions = new ArrayList<>(ocrImageOpsIds.length);
+        for (String id : ocrImageOpsIds) {
+            OCRRegion region = ocrRegion(id);
+            Area crop = region.ops().crop();
+            OCRCharBoxList result = itemTextCache.get(id);
+            if (itemTextDetector.detect(screenshot, crop) || (result == null)) {
+                ids.add(id);
+                regions.add(region);
+            } else {
+                Logger.info("ocr skipped (unchanged) @ %s => %s", crop.name(), result);
+            }
+        }
+        if (ids.isEmpty()) {return;}
+        List<OCRCharBoxList> results = e7as.ocr().textareas(screenshot, regions);
+        for (int i = 0; i < ids.size(); i++) {
+            itemTextCache.put(ids.get(i), results.get(i));
+        }
+    }
+
+    // Note: The item text must have been recognized by `recognizeItemTexts`.
+    //
     // @return whether the ocr result is blank
-    private boolean purchaseIfNeeded(
-            Image screenshot, String ocrImageOpsId, String purchaseAreaId) {
-        Image image = screenshot.mutate(ocrImageOpsMap.get(ocrImageOpsId).payload());
-        String result = e7as.ocr().textarea(image).inline(0);
-        if (ocrTextMap.get("COVENANT_BOOKMARKS").payload().equals(result)) {
-            stat.incrementCovenantBookmarksTimes();
-        } else if (ocrTextMap.get("MYSTIC_MEDALS").payload().equals(result)) {
-            stat.incrementMysticMedalsTimes();
-        } else {
-            return result.isBlank();
+    private boolean purchaseIfNeeded(String ocrImageOpsId, String purchaseAreaId) {
+        OCRCharBoxList result = itemTextCache.get(ocrImageOpsId);
+        if (result.toString().isBlank()) {return true;}
+        OCRDictionary.Match match = itemDictionary.match(result);
+        if (match == null) {return false;}
+        // the weighted edit distance, i.e. the score scaled back by the length
+        int length = Math.max(result.length(), match.text().length());
+        if ((1 - match.score()) * length >= ITEM_MAX_EDIT_COST) {return false;}
+        switch (match.key()) {
+            case "COVENANT_BOOKMARKS" -> stat.incrementCovenantBookmarksTimes();
+            case "MYSTIC_MEDALS" -> stat.incrementMysticMedalsTimes();
+            default -> {return false;}
         }
         Logger.title(2, "important item detected");
         Logger.attribute("item", result);
+        Logger.attribute("item.match", match);
+        itemTextDetector().forget(ocrRegion(ocrImageOpsId).ops().crop());
         e7as.device().tapUntilAppeared(
                 areaMap.get(purchaseAreaId).payload(),
                 imageInAreaMap.get("PURCHASE_ENSURE").payload(),
-                1000
+                e7as.device().latency().suggestTimeout(1000)
         );
         e7as.device().tapUntilDisappeared(
                 areaMap.get("PURCHASE_ENSURE").payload(),
                 imageInAreaMap.get("PURCHASE_ENSURE").payload(),
-                2000
+                e7as.device().latency().suggestTimeout(2000)
         );
         Logger.info("item purchased okay");
         Logger.emptyLine();
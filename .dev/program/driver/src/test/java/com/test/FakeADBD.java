@@ -0,0 +1,253 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.test;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Fake adbd on a loopback port, serving the harnesses without a device.
+ *
+ * <p>It speaks the adb wire protocol (CNXN, OPEN, OKAY, WRTE, CLSE) to one client, and serves
+ * each stream opened by the service given for its destination (without the trailing `\0`); The
+ * stream is closed once the service returns. Services of unknown destinations output nothing.
+ * `shell:echo` (the line separator probed by the client) is served by default.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public class FakeADBD implements AutoCloseable {
+
+    private static final int A_CNXN = 0x4e584e43;
+    private static final int A_OPEN = 0x4e45504f;
+    private static final int A_OKAY = 0x59414b4f;
+    private static final int A_WRTE = 0x45545257;
+    private static final int A_CLSE = 0x45534c43;
+    private static final int MAX_PAYLOAD = 4096;
+
+    private final Function<String, Service> services;
+    private final ServerSocket server = new ServerSocket(0);
+    private final AtomicInteger nextLocalId = new AtomicInteger(1);
+    // streams opened by the client, by the local id (of this side)
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private volatile Socket socket;
+    private volatile OutputStream output;
+    private volatile boolean closed = false;
+
+    // *****************************************************************************************
+    // Methods
+    // *****************************************************************************************
+
+    // @return the address to connect to, such as the value of `adbd.address`
+    public String address() {
+        return "127.0.0.1:" + server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        if (socket != null) {socket.close();}
+    }
+
+    // *****************************************************************************************
+    // StaticMethods
+    // *****************************************************************************************
+
+    // @return a service writing the given output
+    public static Service output(byte[] output) {
+        return stream -> stream.write(output);
+    }
+
+    public static Service output(String output) {
+        return output(output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // *****************************************************************************************
+    // Constructors
+    // *****************************************************************************************
+
+    // @param [services] the service of each destination, or null if unknown
+    public FakeADBD(Function<String, Service> services) throws IOException {
+        this.services = services;
+        Thread thread = new Thread(this::serve, "FakeADBD#serve");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // *****************************************************************************************
+    // InternalMethods
+    // *****************************************************************************************
+
+    private void serve() {
+        try {
+            socket = server.accept();
+            socket.setTcpNoDelay(true);
+            output = socket.getOutputStream();
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            while (!closed) {
+                int command = readIntLE(input), arg0 = readIntLE(input);
+                int arg1 = readIntLE(input), length = readIntLE(input);
+                input.skipNBytes(8); // crc32 & magic
+                byte[] payload = input.readNBytes(length);
+                switch (command) {
+                    case A_CNXN -> send(A_CNXN, 0x01000000, MAX_PAYLOAD, bytes("device::"));
+                    case A_OPEN -> open(arg0, new String(payload, StandardCharsets.UTF_8));
+                    case A_OKAY -> {
+                        Stream stream = streams.get(arg1);
+                        if (stream != null) {stream.acknowledged.release();}
+                    }
+                    case A_CLSE -> {
+                        // acknowledged by a CLSE, as adbd does
+                        Stream stream = streams.remove(arg1);
+                        if (stream == null) {continue;}
+                        stream.closed = true;
+                        send(A_CLSE, stream.localId, stream.remoteId, new byte[0]);
+                    }
+                    default -> {
+                        // WRTE is not expected, nothing is written to the fake services
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // the client closed the connection
+        } catch (IOException e) {
+            if (!closed) {throw new UncheckedIOException(e);}
+        }
+    }
+
+    private void open(int remoteId, String destination) {
+        String name = destination.replace("\0", "");
+        Service service = name.equals("shell:echo") ? output("\n") : services.apply(name);
+        Stream stream = new Stream(nextLocalId.getAndIncrement(), remoteId);
+        streams.put(stream.localId, stream);
+        send(A_OKAY, stream.localId, remoteId, new byte[0]);
+        Thread thread = new Thread(() -> {
+            try {
+                if (service != null) {service.serve(stream);}
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (streams.remove(stream.localId) != null) {
+                stream.closed = true;
+                send(A_CLSE, stream.localId, stream.remoteId, new byte[0]);
+            }
+        }, "FakeADBD#" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void send(int command, int arg0, int arg1, byte[] payload) {
+        int crc32 = 0;
+        for (byte b : payload) {
+            crc32 += (b & 0xFF);
+        }
+        ByteBuffer message = ByteBuffer.allocate(24 + payload.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        message.putInt(command).putInt(arg0).putInt(arg1).putInt(payload.length)
+                .putInt(crc32).putInt(~command).put(payload);
+        synchronized (server) {
+            try {
+                output.write(message.array());
+                output.flush();
+            } catch (IOException e) {
+                if (!closed) {throw new UncheckedIOException(e);}
+            }
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static int readIntLE(InputStream input) throws IOException {
+        byte[] bytes = input.readNBytes(4);
+        if (bytes.length < 4) {throw new EOFException();}
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // *****************************************************************************************
+    // Classes
+    // *****************************************************************************************
+
+    public interface Service {
+
+        void serve(Stream stream) throws InterruptedException;
+
+    }
+
+    public final class Stream {
+
+        private final int localId;
+        private final int remoteId;
+        private final Semaphore acknowledged = new Semaphore(0);
+        private volatile boolean closed = false;
+
+        // @return whether the stream is closed (by either side)
+        public boolean closed() {
+            return closed || FakeADBD.this.closed;
+        }
+
+        // Note: A WRTE is sent after the previous one is acknowledged (OKAY), as adbd does; The
+        // data is dropped if the stream is closed meanwhile.
+        public void write(byte[] data) throws InterruptedException {
+            for (int offset = 0; offset < data.length; offset += MAX_PAYLOAD) {
+                if (closed()) {return;}
+                int length = Math.min(MAX_PAYLOAD, data.length - offset);
+                byte[] payload = new byte[length];
+                System.arraycopy(data, offset, payload, 0, length);
+                send(A_WRTE, localId, remoteId, payload);
+                while (!acknowledged.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (closed()) {return;}
+                }
+            }
+        }
+
+        // Note: Blocks until the stream is closed, for services running until then.
+        public void awaitClosed() throws InterruptedException {
+            while (!closed()) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+        }
+
+        private Stream(int localId, int remoteId) {
+            this.localId = localId;
+            this.remoteId = remoteId;
+        }
+
+    }
+
+}
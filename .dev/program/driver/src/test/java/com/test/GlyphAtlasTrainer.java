@@ -0,0 +1,105 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.test;
+
+import program.common.basic.exception.InvocationException;
+import program.common.basic.logger.Logger;
+import program.common.basic.resource.ResUtl;
+import program.common.basic.resource.data.Data;
+import program.common.basic.resource.data.DataMap;
+import program.common.basic.vision.Image;
+import program.common.basic.vision.Resolution;
+import program.common.smart.ocr.SmartOCR;
+import program.common.smart.ocr.model.OCRCharBoxList;
+import program.common.smart.ocr.model.OCRRegion;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trainer of the glyph atlas (used by `ocr.impl=glyph`), bootstrapped by tesseract.
+ *
+ * <p>Usage: `GlyphAtlasTrainer <language> <png>...`, where the pngs are screenshots of the
+ * secret shop (such as `adb exec-out screencap -p > shop.png`) with the game in the given
+ * language. Each ocr region of the secret shop is recognized by tesseract, and the regions whose
+ * characters are all accurate are learnt into the atlas under
+ * `.dev/resources/common/smart/ocr/_impl/glyph/#GlyphAtlas/<language>`.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public class GlyphAtlasTrainer {
+
+    private static final String ROOT = "/.dev/resources/driver/smart/utility/secretshop";
+    // min accuracy of each character of a region learnt
+    private static final double MIN_ACCURACY = 0.85;
+
+    public static void main(String[] args) throws IOException {
+        String language = args[0];
+        List<Data<OCRRegion>> regions = DataMap.of(ResUtl.home(
+                "%s/#ocrImageOpsMap/%s", ROOT, language
+        ), OCRRegion::parse).stream().toList();
+        int learnt = 0;
+        try (SmartOCR ocr = SmartOCR.of("glyph_trainer_" + language)) {
+            ocr.config().setValue("ocr.impl", "tesseract");
+            ocr.config().setValue("ocr.cache.capacity", "0");
+            ocr.config().setValue("text.language", language);
+            ocr.config().save();
+            for (String path : Arrays.copyOfRange(args, 1, args.length)) {
+                Image frame;
+                try (InputStream stream = new FileInputStream(path)) {
+                    frame = Image.read(path, stream);
+                }
+                Resolution resolution = Resolution.of(frame.width(), frame.height());
+                List<OCRRegion> scaled = regions.stream()
+                        .map(region -> region.payload().scale(resolution))
+                        .toList();
+                List<OCRCharBoxList> results = ocr.textareas(frame, scaled);
+                for (int i = 0; i < scaled.size(); i++) {
+                    if (learn(ocr, frame, scaled.get(i), results.get(i))) {learnt++;}
+                }
+            }
+        }
+        Logger.attribute("glyph.learnt", learnt + " regions");
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    // @return true if the region is learnt
+    private static boolean learn(
+            SmartOCR ocr, Image frame, OCRRegion region, OCRCharBoxList result) {
+        String text = result.inline(0);
+        if (text.isBlank() || !text.equals(result.inline(MIN_ACCURACY))) {
+            Logger.warn("glyph skipped (inaccurate) @ %s => %s", region.ops().crop().name(), text);
+            return false;
+        }
+        try {
+            ocr.learnGlyphs(frame.mutate(region.ops()), text);
+            return true;
+        } catch (InvocationException e) {
+            // such as glyphs touching each other, which are not segmented
+            Logger.warn("glyph skipped (%s) @ %s", e.getMessage(), text);
+            return false;
+        }
+    }
+
+}
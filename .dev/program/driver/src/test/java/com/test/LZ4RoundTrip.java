@@ -0,0 +1,261 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.test;
+
+import program.common.basic.logger.Logger;
+import program.common.basic.vision.Area;
+import program.common.basic.vision.Image;
+import program.common.smart.device.SmartDevice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Round-trip check of the lz4 screencap, against a {@link FakeADBD} serving a fake screencap.
+ *
+ * <p>The fake device serves a raw screencap (RGBA_8888) compressed by a minimal lz4 encoder
+ * here, in the layout written by the `lz4` command line tool and then some: a skippable frame,
+ * a frame of linked blocks (with checksums, stored blocks among them), and a frame of
+ * independent blocks. Each screenshot (whole and areas) is compared with the source pixels.
+ * The device reports the binary present, so nothing is pushed.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public class LZ4RoundTrip {
+
+    private static final int ROUNDS = 10;
+    private static final int WIDTH = 1280, HEIGHT = 720;
+    private static final int HEADER_SIZE = 16;
+    // size of blocks (64KB, the block size id 4), the smallest one exercising the most blocks
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int WINDOW = 65535;
+
+    private static final byte[] SCREENCAP = screencap();
+    private static final byte[] COMPRESSED = frames(SCREENCAP);
+
+    public static void main(String[] args) throws IOException {
+        try (FakeADBD adbd = new FakeADBD(LZ4RoundTrip::service)) {
+            try (SmartDevice device = SmartDevice.of("loopback_lz4")) {
+                device.config().setValue("capture.impl", "adb");
+                device.config().setValue("capture.adb.format", "lz4");
+                device.config().setValue("capture.resolution", "native");
+                device.config().setValue("control.impl", "adb");
+                device.config().setValue("adbd.address", adbd.address());
+                device.config().save();
+                List<Area> areas = List.of(
+                        new Area("TOP_LEFT", 0, 0, 200, 100),
+                        new Area("MIDDLE", 517, 301, 333, 77),
+                        new Area("BOTTOM_RIGHT", WIDTH - 150, HEIGHT - 40, 150, 40)
+                );
+                long cost = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    long start = System.nanoTime();
+                    Image screenshot = device.screenshot();
+                    cost += System.nanoTime() - start;
+                    verify(screenshot, new Area("SCREEN", 0, 0, WIDTH, HEIGHT));
+                    List<Image> images = device.screenshot(areas);
+                    for (int k = 0; k < areas.size(); k++) {
+                        verify(images.get(k), areas.get(k));
+                    }
+                }
+                Logger.attribute("lz4.ratio", format(COMPRESSED.length, SCREENCAP.length));
+                Logger.attribute("lz4.mean", cost / ROUNDS / 1000 + "us per screenshot");
+                Logger.attribute("lz4.verified", ROUNDS * (1 + areas.size()) + " images");
+            }
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static FakeADBD.Service service(String destination) {
+        return switch (destination) {
+            case "shell:wm size" -> FakeADBD.output("Physical size: " + WIDTH + "x" + HEIGHT);
+            case "shell:getprop ro.build.version.sdk" -> FakeADBD.output("30\n");
+            case "shell:find /data/local/tmp -name lz4" -> FakeADBD.output("/data/local/tmp/lz4");
+            case "exec:screencap | /data/local/tmp/lz4 -1 -c" -> FakeADBD.output(COMPRESSED);
+            default -> null;
+        };
+    }
+
+    private static void verify(Image image, Area area) {
+        if ((image.width() != area.width()) || (image.height() != area.height())) {
+            String size = image.width() + "x" + image.height();
+            throw new IllegalStateException("unexpected size " + size + " @ " + area.name());
+        }
+        for (int y = 0; y < area.height(); y++) {
+            for (int x = 0; x < area.width(); x++) {
+                int p = HEADER_SIZE + ((area.y() + y) * WIDTH + area.x() + x) * 4;
+                int expected = ((SCREENCAP[p] & 0xFF) << 16) | ((SCREENCAP[p + 1] & 0xFF) << 8)
+                        | (SCREENCAP[p + 2] & 0xFF);
+                if ((image.rgb(x, y) & 0xFFFFFF) != expected) {
+                    String message = "pixel mismatch at (" + x + ", " + y + ") @ " + area.name();
+                    throw new IllegalStateException(message);
+                }
+            }
+        }
+    }
+
+    private static String format(int compressed, int raw) {
+        return compressed + " / " + raw + " bytes (" + (compressed * 100L / raw) + "%)";
+    }
+
+    // @return a raw screencap (since android 9, i.e. with the colorspace), looking like a game:
+    // flat panels and gradients (well compressed), and a noisy region (incompressible)
+    private static byte[] screencap() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + WIDTH * HEIGHT * 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(WIDTH).putInt(HEIGHT).putInt(1).putInt(1);
+        Random random = new Random(42);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r, g, b;
+                if ((x >= 900) && (y >= 400)) {
+                    r = random.nextInt(256);
+                    g = random.nextInt(256);
+                    b = random.nextInt(256);
+                } else if ((x / 160 + y / 90) % 2 == 0) {
+                    r = 40;
+                    g = 60 + y / 8;
+                    b = 90;
+                } else {
+                    r = x % 256;
+                    g = 200;
+                    b = (x + y) % 256;
+                }
+                buffer.put((byte) r).put((byte) g).put((byte) b).put((byte) 0xFF);
+            }
+        }
+        return buffer.array();
+    }
+
+    // @return a skippable frame, a frame of linked blocks over the first half of the data, and a
+    // frame of independent blocks over the rest
+    private static byte[] frames(byte[] data) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // skippable frame (such as written by other tools), ignored by the reader
+        writeIntLE(output, 0x184D2A53);
+        writeIntLE(output, 5);
+        output.writeBytes(new byte[5]);
+        int half = data.length / 2;
+        // FLG: version 01, linked, block checksum, content checksum
+        frame(output, data, 0, half, 0x40 | 0x10 | 0x04, true);
+        // FLG: version 01, independent
+        frame(output, data, half, data.length, 0x40 | 0x20, false);
+        return output.toByteArray();
+    }
+
+    private static void frame(
+            ByteArrayOutputStream output, byte[] data, int from, int to, int flg, boolean linked) {
+        writeIntLE(output, 0x184D2204);
+        // FLG, BD (block size id 4), header checksum (not verified by the reader)
+        output.write(flg);
+        output.write(4 << 4);
+        output.write(0);
+        boolean checksum = (flg & 0x10) != 0;
+        for (int start = from, n = 0; start < to; start += BLOCK_SIZE, n++) {
+            int end = Math.min(start + BLOCK_SIZE, to);
+            int history = linked ? Math.max(from, start - WINDOW) : start;
+            byte[] block = compress(data, history, start, end);
+            // some blocks are stored, as the tool does for incompressible ones
+            if ((block.length >= end - start) || (n % 7 == 3)) {
+                writeIntLE(output, 0x80000000 | (end - start));
+                output.write(data, start, end - start);
+            } else {
+                writeIntLE(output, block.length);
+                output.writeBytes(block);
+            }
+            if (checksum) {writeIntLE(output, 0);}
+        }
+        // end mark [, content checksum]
+        writeIntLE(output, 0);
+        if ((flg & 0x04) != 0) {writeIntLE(output, 0);}
+    }
+
+    // Note: Greedy matching of 4 bytes by a hash table; The last match starts 12 bytes before the
+    // end at the latest, and the last 5 bytes are literals, as required by the format.
+    //
+    // @param [history] start of the bytes the matches may refer to (before `from` if linked)
+    private static byte[] compress(byte[] data, int history, int from, int to) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int[] table = new int[1 << 16];
+        Arrays.fill(table, -1);
+        for (int p = history; p < from; p++) {
+            table[hash(data, p)] = p;
+        }
+        int anchor = from;
+        for (int p = from; p < to - 12; ) {
+            int h = hash(data, p);
+            int m = table[h];
+            table[h] = p;
+            if ((m < history) || (p - m > WINDOW)
+                    || (data[m] != data[p]) || (data[m + 1] != data[p + 1])
+                    || (data[m + 2] != data[p + 2]) || (data[m + 3] != data[p + 3])) {
+                p++;
+                continue;
+            }
+            int length = 4;
+            while ((p + length < to - 5) && (data[m + length] == data[p + length])) {
+                length++;
+            }
+            int literals = p - anchor;
+            output.write((Math.min(literals, 15) << 4) | Math.min(length - 4, 15));
+            writeLength(output, literals - 15);
+            output.write(data, anchor, literals);
+            output.write((p - m) & 0xFF);
+            output.write((p - m) >>> 8);
+            writeLength(output, length - 4 - 15);
+            p += length;
+            anchor = p;
+        }
+        int literals = to - anchor;
+        output.write(Math.min(literals, 15) << 4);
+        writeLength(output, literals - 15);
+        output.write(data, anchor, literals);
+        return output.toByteArray();
+    }
+
+    private static int hash(byte[] data, int p) {
+        int v = (data[p] & 0xFF) | ((data[p + 1] & 0xFF) << 8)
+                | ((data[p + 2] & 0xFF) << 16) | ((data[p + 3] & 0xFF) << 24);
+        return (v * -1640531535) >>> 16;
+    }
+
+    // @param [rest] the length beyond the 4 bits of the token, written only if non-negative
+    private static void writeLength(ByteArrayOutputStream output, int rest) {
+        if (rest < 0) {return;}
+        for (; rest >= 255; rest -= 255) {
+            output.write(255);
+        }
+        output.write(rest);
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream output, int value) {
+        output.write(value);
+        output.write(value >>> 8);
+        output.write(value >>> 16);
+        output.write(value >>> 24);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.test;
+
+import program.common.basic.logger.Logger;
+import program.common.basic.vision.Image;
+import program.common.smart.device.SmartDevice;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loopback check of the minicap capture, against a {@link FakeADBD} serving a fake minicap.
+ *
+ * <p>The fake device answers the shell commands issued by the device and minicap, and serves
+ * the banner and length-prefixed jpeg frames on `localabstract:minicap`. Each frame paints its
+ * sequence number (as black and white blocks), so each screenshot is checked to be at the
+ * resolution of the display and not older than the frames sent before it is taken, except the
+ * one in transit. The prebuilt binaries are not pushed (the fake device reports them present).
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public class MinicapLoopback {
+
+    private static final int ROUNDS = 50;
+    // interval (ms) between the frames sent, as if the screen keeps changing
+    private static final int FRAME_INTERVAL = 30;
+    // landscape resolution of the fake display (portrait naturally, like a phone)
+    private static final int WIDTH = 1280, HEIGHT = 720;
+    // size of the block painting a bit of the sequence number (16 bits along the top edge)
+    private static final int BLOCK = 80;
+
+    // number of the frames sent
+    private static final AtomicInteger SENT = new AtomicInteger(0);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        try (FakeADBD adbd = new FakeADBD(MinicapLoopback::service)) {
+            try (SmartDevice device = SmartDevice.of("loopback_minicap")) {
+                device.config().setValue("capture.impl", "minicap");
+                device.config().setValue("capture.resolution", "native");
+                device.config().setValue("control.impl", "adb");
+                device.config().setValue("adbd.address", adbd.address());
+                device.config().save();
+                // the first frames are slow (jpeg encoder warming up)
+                while (SENT.get() < 3) {
+                    TimeUnit.MILLISECONDS.sleep(FRAME_INTERVAL);
+                }
+                long cost = 0;
+                int maxLag = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    // frames keep coming meanwhile, so the screenshot has to wait for them
+                    TimeUnit.MILLISECONDS.sleep(FRAME_INTERVAL);
+                    int sent = SENT.get();
+                    long start = System.nanoTime();
+                    Image screenshot = device.screenshot();
+                    cost += System.nanoTime() - start;
+                    if ((screenshot.width() != WIDTH) || (screenshot.height() != HEIGHT)) {
+                        String size = screenshot.width() + "x" + screenshot.height();
+                        throw new IllegalStateException("unexpected size " + size);
+                    }
+                    // the frame in transit (sent but not received yet) may be missed
+                    int lag = sent - sequence(screenshot);
+                    if (lag > 1) {
+                        String message = "stale frame, " + lag + " frames behind";
+                        throw new IllegalStateException(message);
+                    }
+                    maxLag = Math.max(maxLag, lag);
+                }
+                Logger.attribute("minicap.frames_sent", SENT.get());
+                Logger.attribute("minicap.max_lag", maxLag + " frames");
+                Logger.attribute("minicap.mean", cost / ROUNDS / 1000 + "us per screenshot");
+            }
+        }
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static FakeADBD.Service service(String destination) {
+        if (destination.equals("shell:wm size")) {
+            return FakeADBD.output("Physical size: " + HEIGHT + "x" + WIDTH + "\n");
+        } else if (destination.equals("shell:find /data/local/tmp -name minicap")) {
+            return FakeADBD.output("/data/local/tmp/minicap\n");
+        } else if (destination.endsWith("/data/local/tmp/minicap -i")) {
+            return FakeADBD.output(
+                    "{\"width\":" + HEIGHT + ",\"height\":" + WIDTH + ",\"rotation\":90}\n"
+            );
+        } else if (destination.contains("/data/local/tmp/minicap -P")) {
+            // the server keeps running until the stream is closed
+            return stream -> {
+                stream.write("PID: 4242\n".getBytes(StandardCharsets.UTF_8));
+                stream.awaitClosed();
+            };
+        } else if (destination.equals("localabstract:minicap")) {
+            return MinicapLoopback::stream;
+        }
+        return null;
+    }
+
+    private static void stream(FakeADBD.Stream stream) throws InterruptedException {
+        ByteBuffer banner = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        banner.put((byte) 1).put((byte) 24).putInt(4242)
+                .putInt(HEIGHT).putInt(WIDTH).putInt(HEIGHT).putInt(WIDTH)
+                .put((byte) 1).put((byte) 2);
+        stream.write(banner.array());
+        while (!stream.closed()) {
+            byte[] frame = jpeg(SENT.get() + 1);
+            ByteBuffer head = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            stream.write(head.putInt(frame.length).array());
+            stream.write(frame);
+            SENT.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(FRAME_INTERVAL);
+        }
+    }
+
+    // @return the sequence number painted into the frame, see `jpeg(int)`
+    private static int sequence(Image screenshot) {
+        int sequence = 0;
+        for (int i = 0; i < 16; i++) {
+            if ((screenshot.rgb(i * BLOCK + BLOCK / 2, BLOCK / 2) & 0xFF) >= 128) {
+                sequence |= 1 << i;
+            }
+        }
+        return sequence;
+    }
+
+    private static byte[] jpeg(int sequence) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.fillRect(0, 0, WIDTH, HEIGHT);
+            for (int i = 0; i < 16; i++) {
+                boolean set = ((sequence >>> i) & 1) != 0;
+                graphics.setColor(set ? Color.WHITE : Color.BLACK);
+                graphics.fillRect(i * BLOCK, 0, BLOCK, BLOCK);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.test;
+
+import program.common.basic.logger.Logger;
+import program.common.basic.vision.Area;
+import program.common.basic.vision.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark of png decoding, the dedicated decoder of `Image.read(...)` vs `ImageIO.read`.
+ *
+ * <p>Usage: `PNGDecoderBenchmark [png]`, where the png is the output of `screencap -p` (such as
+ * `adb exec-out screencap -p > screen.png`); A frame is synthesized if not given. Both the whole
+ * frame and a crop near the top are decoded, the latter showing the rows skipped.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public class PNGDecoderBenchmark {
+
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 100;
+
+    public static void main(String[] args) throws IOException {
+        byte[] png = (args.length == 0) ? synthesize() : Files.readAllBytes(Path.of(args[0]));
+        Area crop = new Area("CROP", 100, 40, 300, 60);
+        verify(png, crop);
+        Logger.attribute("png.size", png.length + " bytes");
+        measure("whole.imageio", () -> imageIO(png, null));
+        measure("whole.decoder", () -> Image.read("SCREEN", stream(png)));
+        measure("crop.imageio", () -> imageIO(png, crop));
+        measure("crop.decoder", () -> Image.read("CROP", stream(png), crop));
+    }
+
+    // *****************************************************************************************
+    // InternalStaticMethods
+    // *****************************************************************************************
+
+    private static void measure(String name, Runnable decoding) {
+        for (int i = 0; i < WARMUP; i++) {
+            decoding.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            decoding.run();
+        }
+        long mean = (System.nanoTime() - start) / ROUNDS / 1000;
+        Logger.attribute(name + ".mean", mean + "us per decoding");
+    }
+
+    // Note: The results of both decoders must be identical, otherwise the timing is meaningless.
+    private static void verify(byte[] png, Area crop) {
+        for (Area area : new Area[]{null, crop}) {
+            BufferedImage expected = imageIO(png, area);
+            Image actual = Image.read("VERIFY", stream(png), area);
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    if ((expected.getRGB(x, y) & 0xFFFFFF) != actual.rgb(x, y)) {
+                        String message = "decoders differ at (" + x + "," + y + ")";
+                        throw new IllegalStateException(message);
+                    }
+                }
+            }
+        }
+    }
+
+    private static BufferedImage imageIO(byte[] png, Area crop) {
+        try {
+            BufferedImage image = ImageIO.read(stream(png));
+            if (crop == null) {return image;}
+            return image.getSubimage(crop.x(), crop.y(), crop.width(), crop.height());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InputStream stream(byte[] png) {
+        return new ByteArrayInputStream(png);
+    }
+
+    // @return a 1280x720 rgb png with flat panels, text and noise, roughly like the game
+    private static byte[] synthesize() throws IOException {
+        int width = 1280, height = 720;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            for (int i = 0; i < 40; i++) {
+                graphics.setColor(new Color(rand.nextInt(0x1000000)));
+                graphics.fillRect(rand.nextInt(width), rand.nextInt(height), 200, 120);
+            }
+            graphics.setColor(Color.WHITE);
+            for (int y = 30; y < height; y += 40) {
+                graphics.drawString("Covenant Bookmarks 184,000 Gold", 20 + y % 300, y);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        for (int i = 0; i < 20000; i++) {
+            image.setRGB(rand(width), rand(height), rand(0x1000000));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static int rand(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright (C) 2023 the original author or authors
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.test;
+
+import program.common.basic.logger.Logger;
+import program.common.basic.vision.Image;
+import program.common.smart.ocr.SmartOCR;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Benchmark of per-region ocr overhead of the tesseract bindings (jna vs ffm).
+ *
+ * <p>The same small region is recognized repeatedly by one ocr instance with the cache disabled,
+ * so the difference of the mean costs is the difference of the binding overhead. The ffm binding
+ * requires jdk 22+ and the jar built with profile `ffm`.
+ *
+ * @author wautsns
+ * @since {{{SINCE_PLACEHOLDER}}}
+ */
+public class TesseractBindingBenchmark {
+
+    private static final int WARMUP = 50;
+    private static final int ROUNDS = 500;
+
+    public static void main(String[] args) {
+        Image region = render("还剩12分");
+        for (String binding : new String[]{"jna", "ffm"}) {
+            try (SmartOCR ocr = SmartOCR.of("benchmark_" + binding)) {
+                ocr.config().setValue("ocr.impl", "tesseract");
+                ocr.config().setValue("ocr.tesseract.binding", binding);
+                ocr.config().setValue("ocr.pool-size", "1");
+                ocr.config().setValue("ocr.cache.capacity", "0");
+                ocr.config().setValue("text.language", "zhCN");
+                ocr.config().save();
+                for (int i = 0; i < WARMUP; i++) {
+                    ocr.textarea(region);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    ocr.textarea(region);
+                }
+                long mean = (System.nanoTime() - start) / ROUNDS / 1000;
+                Logger.attribute(binding + ".mean", mean + "us per region");
+            }
+        }
+    }
+
+    // @return the given text rendered in white on black, like the regions of the game
+    private static Image render(String text) {
+        int width = 120, height = 28;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 20));
+            graphics.drawString(text, 4, 22);
+        } finally {
+            graphics.dispose();
+        }
+        int[] rgbs = image.getRGB(0, 0, width, height, null, 0, width);
+        return Image.of(text, width, height, rgbs);
+    }
+
+}